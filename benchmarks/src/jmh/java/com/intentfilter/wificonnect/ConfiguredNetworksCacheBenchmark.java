@@ -0,0 +1,67 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.WifiConfiguration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * The configured networks lookups behind WifiHelper's getExistingNetworkId and assignHighestPriority.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfiguredNetworksCacheBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    int size;
+
+    private List<String> SSIDs;
+    private ConfiguredNetworksCache configuredNetworks;
+
+    @Setup
+    public void setUp() {
+        List<WifiConfiguration> configurations = Datasets.configuredNetworks(size);
+        // Stub only, a mock recording millions of invocations would dominate the allocation figures
+        WifiBackend backend = mock(WifiBackend.class, withSettings().stubOnly());
+        when(backend.getConfiguredNetworks()).thenReturn(configurations);
+
+        SSIDs = Datasets.SSIDs(size);
+        configuredNetworks = ConfiguredNetworksCache.forBackend(backend);
+    }
+
+    /**
+     * Looks every SSID up in a loaded cache.
+     */
+    @Benchmark
+    public void getExistingNetworkId(Blackhole blackhole) {
+        for (int i = 0, size = SSIDs.size(); i < size; i++) {
+            blackhole.consume(configuredNetworks.getNetworkId(SSIDs.get(i)));
+        }
+    }
+
+    /**
+     * Adding or enabling a network invalidates the cache, so the next priority assignment reloads it.
+     */
+    @Benchmark
+    public int assignHighestPriority() {
+        configuredNetworks.invalidate();
+        return configuredNetworks.getMaxPriority() + 1;
+    }
+}
@@ -0,0 +1,128 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static java.lang.String.format;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Synthetic SSIDs shaped like those seen in the field: store and office networks sharing prefixes, half of them
+ * quoted the way WifiManager reports them.
+ */
+final class Datasets {
+    private static final String[] PREFIXES = {"STORE-", "OFFICE_", "Guest ", "AndroidAP", "HOME-"};
+    private static final int[] FREQUENCIES = {2412, 2437, 2462, 5180, 5240};
+    private static final long SEED = 42;
+
+    private Datasets() {
+    }
+
+    static List<String> SSIDs(int size) {
+        Random random = new Random(SEED);
+        List<String> SSIDs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String SSID = PREFIXES[random.nextInt(PREFIXES.length)] + Integer.toHexString(random.nextInt(0x10000));
+            SSIDs.add(random.nextBoolean() ? "\"" + SSID + "\"" : SSID);
+        }
+        return SSIDs;
+    }
+
+    static List<SSIDPattern> patterns(int size) {
+        Random random = new Random(SEED + 1);
+        List<SSIDPattern> patterns = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String prefix = PREFIXES[random.nextInt(PREFIXES.length)];
+            String suffix = Integer.toHexString(random.nextInt(0x10000));
+            switch (i % 3) {
+                case 0:
+                    patterns.add(SSIDPattern.exact(prefix + suffix));
+                    break;
+                case 1:
+                    patterns.add(SSIDPattern.prefix(prefix + suffix.charAt(0)));
+                    break;
+                default:
+                    patterns.add(SSIDPattern.wildcard(prefix + "??" + suffix.charAt(0) + "*"));
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * A scan with a few access points per SSID. ScanResult has no public constructor in the SDK, its fields are
+     * public though.
+     */
+    static List<ScanResult> scanResults(int size) {
+        Random random = new Random(SEED + 2);
+        List<String> SSIDs = SSIDs(Math.max(1, size / 3));
+        List<ScanResult> scanResults = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ScanResult scanResult = mock(ScanResult.class);
+            scanResult.SSID = SSIDs.get(random.nextInt(SSIDs.size()));
+            scanResult.BSSID = format("02:00:00:%02x:%02x:%02x", i >> 16 & 0xff, i >> 8 & 0xff, i & 0xff);
+            scanResult.level = -30 - random.nextInt(60);
+            scanResult.frequency = FREQUENCIES[random.nextInt(FREQUENCIES.length)];
+            scanResult.capabilities = "[ESS]";
+            scanResults.add(scanResult);
+        }
+        return scanResults;
+    }
+
+    /**
+     * Every tenth SSID of the scan, the way an app lists the networks of its stores.
+     */
+    static List<String> wantedSSIDs(List<ScanResult> scanResults) {
+        List<String> wantedSSIDs = new ArrayList<>();
+        for (int i = 0, size = scanResults.size(); i < size; i += 10) {
+            wantedSSIDs.add(scanResults.get(i).SSID);
+        }
+        return wantedSSIDs;
+    }
+
+    static List<WifiConfiguration> configuredNetworks(int size) {
+        Random random = new Random(SEED + 3);
+        List<String> SSIDs = SSIDs(size);
+        List<WifiConfiguration> configuredNetworks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            WifiConfiguration configuration = new WifiConfiguration();
+            configuration.SSID = WifiHelper.formatSSID(SSIDs.get(i).replace("\"", ""));
+            configuration.networkId = i;
+            configuration.priority = random.nextInt(size);
+            configuration.allowedKeyManagement = keyManagement(WifiConfiguration.KeyMgmt.NONE);
+            configuredNetworks.add(configuration);
+        }
+        return configuredNetworks;
+    }
+
+    /**
+     * Every other configured network unchanged, and as many new WPA networks.
+     */
+    static List<WifiConfiguration> networksToProvision(List<WifiConfiguration> configuredNetworks) {
+        List<WifiConfiguration> configurations = new ArrayList<>(configuredNetworks.size());
+        for (int i = 0, size = configuredNetworks.size(); i < size; i++) {
+            WifiConfiguration configuration = new WifiConfiguration();
+            if (i % 2 == 0) {
+                configuration.SSID = configuredNetworks.get(i).SSID;
+                configuration.allowedKeyManagement = keyManagement(WifiConfiguration.KeyMgmt.NONE);
+            } else {
+                configuration.SSID = WifiHelper.formatSSID("PROVISIONED-" + i);
+                configuration.preSharedKey = "\"password\"";
+                configuration.allowedKeyManagement = keyManagement(WifiConfiguration.KeyMgmt.WPA_PSK);
+            }
+            configurations.add(configuration);
+        }
+        return configurations;
+    }
+
+    // The fields of the android.jar stubs aren't initialized
+    private static BitSet keyManagement(int keyManagement) {
+        BitSet bits = new BitSet();
+        bits.set(keyManagement);
+        return bits;
+    }
+}
@@ -0,0 +1,52 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.WifiConfiguration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Provisioning as many networks as are configured, half of them configured already, which assigns the
+ * priorities of the whole batch from one read of the configured networks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkProvisionerBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    int size;
+
+    private List<WifiConfiguration> configurations;
+    private NetworkProvisioner provisioner;
+
+    @Setup
+    public void setUp() {
+        List<WifiConfiguration> configuredNetworks = Datasets.configuredNetworks(size);
+        WifiBackend backend = mock(WifiBackend.class, withSettings().stubOnly());
+        when(backend.getConfiguredNetworks()).thenReturn(configuredNetworks);
+
+        configurations = Datasets.networksToProvision(configuredNetworks);
+        provisioner = new NetworkProvisioner(backend, ConfiguredNetworksCache.forBackend(backend));
+    }
+
+    @Benchmark
+    public ProvisioningResult provision() {
+        return provisioner.provision(configurations);
+    }
+}
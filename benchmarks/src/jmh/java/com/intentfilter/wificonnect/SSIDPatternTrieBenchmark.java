@@ -0,0 +1,56 @@
+package com.intentfilter.wificonnect;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+
+/**
+ * Compiling the patterns of a connectToMatchingSSID call, and matching a scan of 100 SSIDs against them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SSIDPatternTrieBenchmark {
+    private static final int SCAN_SIZE = 100;
+
+    @Param({"10", "100", "1000", "10000"})
+    int size;
+
+    private List<SSIDPattern> patterns;
+    private List<String> scannedSSIDs;
+    private SSIDPatternTrie trie;
+
+    @Setup
+    public void setUp() {
+        patterns = Datasets.patterns(size);
+        scannedSSIDs = Datasets.SSIDs(SCAN_SIZE);
+        trie = new SSIDPatternTrie(patterns);
+    }
+
+    @Benchmark
+    public SSIDPatternTrie compile() {
+        return new SSIDPatternTrie(patterns);
+    }
+
+    @Benchmark
+    public int matchScan() {
+        int matches = 0;
+        for (int i = 0; i < SCAN_SIZE; i++) {
+            if (trie.matches(scannedSSIDs.get(i))) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,60 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Picking the SSIDs to connect to out of a scan, run once per connection request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SSIDSelectionBenchmark {
+    private static final int CANDIDATES = 3;
+
+    @Param({"10", "100", "1000", "10000"})
+    int size;
+
+    private List<ScanResult> scanResults;
+    private List<String> wantedSSIDs;
+    private WifiHelper wifiHelper;
+    private SSIDMatcher matcher;
+    private SignalScorer scorer;
+
+    @Setup
+    public void setUp() {
+        scanResults = Datasets.scanResults(size);
+        wantedSSIDs = Datasets.wantedSSIDs(scanResults);
+        WifiBackend backend = mock(WifiBackend.class);
+        wifiHelper = new WifiHelper(backend);
+        matcher = new SSIDMatcher(wantedSSIDs);
+        scorer = SignalScorer.forBackend(backend);
+        scorer.update(scanResults);
+    }
+
+    @Benchmark
+    public String findAvailableSSID() {
+        return wifiHelper.findAvailableSSID(matcher, scanResults);
+    }
+
+    @Benchmark
+    public List<ScanResult> findBestCandidates() {
+        return matcher.findBest(scanResults, CANDIDATES, scorer);
+    }
+}
@@ -0,0 +1,57 @@
+package com.intentfilter.wificonnect;
+
+import com.intentfilter.wificonnect.helpers.StringUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Quote handling applied to every SSID of every scan and configured network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringUtilBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    int size;
+
+    private List<String> SSIDs;
+    private String wanted;
+
+    @Setup
+    public void setUp() {
+        SSIDs = Datasets.SSIDs(size);
+        wanted = "\"" + StringUtil.trimQuotes(SSIDs.get(size / 2)) + "\"";
+    }
+
+    @Benchmark
+    public void trimQuotes(Blackhole blackhole) {
+        for (int i = 0, size = SSIDs.size(); i < size; i++) {
+            blackhole.consume(StringUtil.trimQuotes(SSIDs.get(i)));
+        }
+    }
+
+    @Benchmark
+    public int equalsIgnoringQuotes() {
+        int matches = 0;
+        for (int i = 0, size = SSIDs.size(); i < size; i++) {
+            if (StringUtil.equalsIgnoringQuotes(wanted, SSIDs.get(i))) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,307 @@
+package com.intentfilter.wificonnect;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.ConnectivityManager.NetworkCallback;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static android.content.Context.CONNECTIVITY_SERVICE;
+import static android.net.ConnectivityManager.TYPE_WIFI;
+import static android.net.wifi.WifiManager.EXTRA_NETWORK_INFO;
+import static android.net.wifi.WifiManager.EXTRA_WIFI_STATE;
+import static android.net.wifi.WifiManager.NETWORK_STATE_CHANGED_ACTION;
+import static android.net.wifi.WifiManager.SCAN_RESULTS_AVAILABLE_ACTION;
+import static android.net.wifi.WifiManager.WIFI_STATE_CHANGED_ACTION;
+import static android.net.wifi.WifiManager.WIFI_STATE_UNKNOWN;
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.LOLLIPOP;
+import static android.os.Build.VERSION_CODES.M;
+
+class AndroidWifiBackend implements WifiBackend {
+    // WifiManager.CONFIGURED_NETWORKS_CHANGED_ACTION is hidden from the SDK
+    static final String CONFIGURED_NETWORKS_CHANGED_ACTION = "android.net.wifi.CONFIGURED_NETWORKS_CHANGE";
+    private static final long WORKER_IDLE_TIMEOUT_MILLIS = 30000;
+    private static final Map<Context, AndroidWifiBackend> backends = new HashMap<>();
+
+    private final Context context;
+    private final WifiManager wifiManager;
+    private final ConnectivityManager connectivityManager;
+    private final Map<EventListener, BroadcastReceiver> receivers = new HashMap<>();
+    private final Map<NetworkListener, NetworkCallback> networkCallbacks = new HashMap<>();
+    private Scheduler mainScheduler;
+
+    private AndroidWifiBackend(Context context) {
+        this.context = context;
+        this.wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(CONNECTIVITY_SERVICE);
+    }
+
+    static synchronized AndroidWifiBackend forContext(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        if (applicationContext == null) {
+            applicationContext = context;
+        }
+        AndroidWifiBackend backend = backends.get(applicationContext);
+        if (backend == null) {
+            backend = new AndroidWifiBackend(applicationContext);
+            backends.put(applicationContext, backend);
+        }
+        return backend;
+    }
+
+    /**
+     * Forgets the backend of the context's application, returns it or null when there was none.
+     */
+    static synchronized AndroidWifiBackend release(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        return backends.remove(applicationContext != null ? applicationContext : context);
+    }
+
+    @Override
+    public boolean setWifiEnabled(boolean enabled) {
+        return wifiManager.setWifiEnabled(enabled);
+    }
+
+    @Override
+    public boolean isWifiEnabled() {
+        return wifiManager.isWifiEnabled();
+    }
+
+    @Override
+    public boolean startScan() {
+        return wifiManager.startScan();
+    }
+
+    @Override
+    public List<ScanResult> getScanResults() {
+        return wifiManager.getScanResults();
+    }
+
+    @Override
+    public int addNetwork(WifiConfiguration configuration) {
+        return wifiManager.addNetwork(configuration);
+    }
+
+    @Override
+    public int updateNetwork(WifiConfiguration configuration) {
+        return wifiManager.updateNetwork(configuration);
+    }
+
+    @Override
+    public boolean enableNetwork(int networkId, boolean disableOthers) {
+        return wifiManager.enableNetwork(networkId, disableOthers);
+    }
+
+    @Override
+    public List<WifiConfiguration> getConfiguredNetworks() {
+        return wifiManager.getConfiguredNetworks();
+    }
+
+    @Override
+    public WifiInfo getConnectionInfo() {
+        return wifiManager.getConnectionInfo();
+    }
+
+    @Override
+    public boolean disconnect() {
+        return wifiManager.disconnect();
+    }
+
+    @Override
+    public boolean isActiveNetworkWifi() {
+        NetworkInfo activeNetworkInfo = connectivityManager.getActiveNetworkInfo();
+        return activeNetworkInfo != null && activeNetworkInfo.getType() == TYPE_WIFI;
+    }
+
+    @Override
+    @TargetApi(LOLLIPOP)
+    public void bindProcessToNetwork(Network network) {
+        if (SDK_INT >= M) {
+            connectivityManager.bindProcessToNetwork(network);
+        } else {
+            ConnectivityManager.setProcessDefaultNetwork(network);
+        }
+    }
+
+    @Override
+    @TargetApi(LOLLIPOP)
+    public Network getBoundNetworkForProcess() {
+        if (SDK_INT < LOLLIPOP) {
+            return null;
+        } else if (SDK_INT >= M) {
+            return connectivityManager.getBoundNetworkForProcess();
+        } else {
+            return ConnectivityManager.getProcessDefaultNetwork();
+        }
+    }
+
+    @Override
+    @TargetApi(LOLLIPOP)
+    public boolean isWifiNetwork(Network network) {
+        NetworkInfo networkInfo = connectivityManager.getNetworkInfo(network);
+        return networkInfo != null && networkInfo.getType() == TYPE_WIFI;
+    }
+
+    @Override
+    @TargetApi(LOLLIPOP)
+    public void reportNetworkConnectivity(Network network) {
+        if (SDK_INT >= M) {
+            connectivityManager.reportNetworkConnectivity(network, true);
+        } else {
+            connectivityManager.reportBadNetwork(network);
+        }
+    }
+
+    @Override
+    public synchronized void registerEventListener(WifiEvent.Type type, final EventListener listener) {
+        if (receivers.containsKey(listener)) {
+            return;
+        }
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                WifiEvent event = toEvent(intent, isInitialStickyBroadcast());
+                if (event != null) {
+                    listener.onEvent(event);
+                }
+            }
+        };
+        receivers.put(listener, receiver);
+        context.registerReceiver(receiver, new IntentFilter(actionFor(type)));
+    }
+
+    @Override
+    public synchronized void unregisterEventListener(EventListener listener) {
+        BroadcastReceiver receiver = receivers.remove(listener);
+        if (receiver != null) {
+            context.unregisterReceiver(receiver);
+        }
+    }
+
+    @Override
+    @TargetApi(LOLLIPOP)
+    public synchronized void registerNetworkListener(final NetworkListener listener) {
+        if (networkCallbacks.containsKey(listener)) {
+            return;
+        }
+        NetworkCallback callback = new NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                NetworkInfo networkInfo = connectivityManager.getNetworkInfo(network);
+                listener.onNetworkAvailable(network, networkInfo != null ? networkInfo.getExtraInfo() : null);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                listener.onNetworkLost(network);
+            }
+        };
+        networkCallbacks.put(listener, callback);
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addTransportType(NetworkCapabilities.TRANSPORT_WIFI).build();
+        connectivityManager.registerNetworkCallback(request, callback);
+    }
+
+    @Override
+    @TargetApi(LOLLIPOP)
+    public synchronized void unregisterNetworkListener(NetworkListener listener) {
+        NetworkCallback callback = networkCallbacks.remove(listener);
+        if (callback != null) {
+            connectivityManager.unregisterNetworkCallback(callback);
+        }
+    }
+
+    @Override
+    public File getFilesDir() {
+        return context.getFilesDir();
+    }
+
+    @Override
+    public Clock getClock() {
+        return Clock.SYSTEM;
+    }
+
+    @Override
+    public synchronized Scheduler getMainScheduler() {
+        if (mainScheduler == null) {
+            mainScheduler = HandlerScheduler.mainThread();
+        }
+        return mainScheduler;
+    }
+
+    @Override
+    public Scheduler newBackgroundScheduler(String name) {
+        return HandlerScheduler.newThread(name);
+    }
+
+    @Override
+    public Executor newSerialExecutor(final String name, int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, WORKER_IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static String actionFor(WifiEvent.Type type) {
+        switch (type) {
+            case WIFI_STATE_CHANGED:
+                return WIFI_STATE_CHANGED_ACTION;
+            case NETWORK_STATE_CHANGED:
+                return NETWORK_STATE_CHANGED_ACTION;
+            case SCAN_RESULTS_AVAILABLE:
+                return SCAN_RESULTS_AVAILABLE_ACTION;
+            default:
+                return CONFIGURED_NETWORKS_CHANGED_ACTION;
+        }
+    }
+
+    private static WifiEvent toEvent(Intent intent, boolean initialStickyBroadcast) {
+        String action = intent.getAction();
+        if (WIFI_STATE_CHANGED_ACTION.equals(action)) {
+            return WifiEvent.wifiStateChanged(intent.getIntExtra(EXTRA_WIFI_STATE, WIFI_STATE_UNKNOWN),
+                    initialStickyBroadcast);
+        } else if (NETWORK_STATE_CHANGED_ACTION.equals(action)) {
+            NetworkInfo networkInfo = intent.getParcelableExtra(EXTRA_NETWORK_INFO);
+            if (networkInfo == null) {
+                return null;
+            }
+            NetworkInfo.DetailedState state = networkInfo.getDetailedState();
+            return WifiEvent.networkStateChanged(networkInfo.isConnected(),
+                    state != null ? state.ordinal() : WifiEvent.UNKNOWN, networkInfo.getExtraInfo(),
+                    initialStickyBroadcast);
+        } else if (SCAN_RESULTS_AVAILABLE_ACTION.equals(action)) {
+            return WifiEvent.scanResultsAvailable();
+        } else if (CONFIGURED_NETWORKS_CHANGED_ACTION.equals(action)) {
+            return WifiEvent.configuredNetworksChanged();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,17 @@
+package com.intentfilter.wificonnect;
+
+import android.os.SystemClock;
+
+/**
+ * Source of elapsed realtime, so that timeouts and ages can be driven by a simulated clock off-device.
+ */
+interface Clock {
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    long elapsedRealtime();
+}
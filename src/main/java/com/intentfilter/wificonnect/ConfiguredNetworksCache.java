@@ -0,0 +1,133 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.WifiConfiguration;
+
+import com.intentfilter.wificonnect.WifiBackend.EventListener;
+import com.intentfilter.wificonnect.helpers.Logger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class ConfiguredNetworksCache {
+    static final int NO_PRIORITY = -1;
+    private static final int NETWORK_ID_NOT_FOUND = -1;
+    private static final Map<WifiBackend, ConfiguredNetworksCache> caches = new HashMap<>();
+
+    private final WifiBackend backend;
+    private final Logger logger;
+    private volatile int generation;
+    private volatile Snapshot snapshot;
+    private EventListener configuredNetworksReceiver;
+
+    private ConfiguredNetworksCache(WifiBackend backend) {
+        this.backend = backend;
+        this.logger = Logger.loggerFor(ConfiguredNetworksCache.class);
+    }
+
+    /**
+     * One cache, and so one invalidation receiver, per backend however many managers use it.
+     */
+    static synchronized ConfiguredNetworksCache forBackend(WifiBackend backend) {
+        ConfiguredNetworksCache cache = caches.get(backend);
+        if (cache == null) {
+            cache = new ConfiguredNetworksCache(backend);
+            caches.put(backend, cache);
+        }
+        return cache;
+    }
+
+    static synchronized void release(WifiBackend backend) {
+        ConfiguredNetworksCache cache = caches.remove(backend);
+        if (cache != null) {
+            cache.unregisterForInvalidation();
+        }
+    }
+
+    int getNetworkId(String SSID) {
+        Integer networkId = snapshot().networkIds.get(WifiSSID.of(SSID));
+        return networkId != null ? networkId : NETWORK_ID_NOT_FOUND;
+    }
+
+    int getMaxPriority() {
+        return snapshot().maxPriority;
+    }
+
+    synchronized void invalidate() {
+        generation++;
+        snapshot = null;
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            registerForInvalidation();
+            int loadingGeneration = generation;
+            current = Snapshot.of(backend.getConfiguredNetworks());
+            publish(current, loadingGeneration);
+            logger.d("Loaded %d configured networks", current.networkIds.size());
+        }
+        return current;
+    }
+
+    /**
+     * A snapshot loaded across an invalidation may predate the change, it serves the lookup that loaded it but
+     * isn't kept.
+     */
+    private synchronized void publish(Snapshot loaded, int loadingGeneration) {
+        if (generation == loadingGeneration) {
+            snapshot = loaded;
+        }
+    }
+
+    private synchronized void registerForInvalidation() {
+        if (configuredNetworksReceiver != null) {
+            return;
+        }
+        configuredNetworksReceiver = new EventListener() {
+            @Override
+            public void onEvent(WifiEvent event) {
+                invalidate();
+            }
+        };
+        backend.registerEventListener(WifiEvent.Type.CONFIGURED_NETWORKS_CHANGED, configuredNetworksReceiver);
+        logger.d("Registered for configured networks changed events");
+    }
+
+    private synchronized void unregisterForInvalidation() {
+        if (configuredNetworksReceiver != null) {
+            backend.unregisterEventListener(configuredNetworksReceiver);
+            configuredNetworksReceiver = null;
+        }
+        generation++;
+        snapshot = null;
+    }
+
+    private static class Snapshot {
+        private final Map<WifiSSID, Integer> networkIds;
+        private final int maxPriority;
+
+        private Snapshot(Map<WifiSSID, Integer> networkIds, int maxPriority) {
+            this.networkIds = networkIds;
+            this.maxPriority = maxPriority;
+        }
+
+        static Snapshot of(List<WifiConfiguration> configuredNetworks) {
+            if (configuredNetworks == null) {
+                return new Snapshot(Collections.<WifiSSID, Integer>emptyMap(), NO_PRIORITY);
+            }
+
+            Map<WifiSSID, Integer> networkIds = new HashMap<>(configuredNetworks.size() * 2);
+            int maxPriority = NO_PRIORITY;
+            for (WifiConfiguration configuration : configuredNetworks) {
+                WifiSSID SSID = WifiSSID.of(configuration.SSID);
+                if (SSID != null && !networkIds.containsKey(SSID)) {
+                    networkIds.put(SSID, configuration.networkId);
+                }
+                maxPriority = Math.max(maxPriority, configuration.priority);
+            }
+            return new Snapshot(networkIds, maxPriority);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.intentfilter.wificonnect;
+
+public class ConnectionEventLog {
+    public enum EventType {
+        REQUEST_STARTED, WIFI_ENABLED, SCAN_RESULTS, CANDIDATES_SELECTED, ATTEMPT_STARTED, NETWORK_ENABLED,
+        NETWORK_CONNECTED, NETWORK_BOUND, ATTEMPT_FAILED, CONNECTION_ESTABLISHED, CONNECTION_FAILED,
+        // First argument is the NetworkInfo.DetailedState or WifiManager WIFI_STATE_* reported by the broadcast
+        NETWORK_STATE_CHANGED, WIFI_STATE_CHANGED
+    }
+
+    static final int NO_SSID = 0;
+    private static final EventType[] EVENT_TYPES = EventType.values();
+
+    private final Clock clock;
+    private int capacity;
+    private long[] timestamps = new long[0];
+    private int[] types = new int[0];
+    private int[] SSIDIds = new int[0];
+    private int[] firstArgs = new int[0];
+    private int[] secondArgs = new int[0];
+    private long recorded;
+
+    ConnectionEventLog(Clock clock) {
+        this.clock = clock;
+    }
+
+    public synchronized void enable(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity can't be negative");
+        }
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.types = new int[capacity];
+        this.SSIDIds = new int[capacity];
+        this.firstArgs = new int[capacity];
+        this.secondArgs = new int[capacity];
+        this.recorded = 0;
+    }
+
+    public void disable() {
+        enable(0);
+    }
+
+    public synchronized boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    synchronized void record(EventType type, int SSIDId, int firstArg, int secondArg) {
+        if (capacity == 0) {
+            return;
+        }
+        int slot = (int) (recorded++ % capacity);
+        timestamps[slot] = clock.elapsedRealtime();
+        types[slot] = type.ordinal();
+        SSIDIds[slot] = SSIDId;
+        firstArgs[slot] = firstArg;
+        secondArgs[slot] = secondArg;
+    }
+
+    /**
+     * Oldest to newest, one event per line: elapsed realtime in ms, type, SSID id (hash of the unquoted SSID)
+     * and the two event arguments.
+     */
+    public synchronized String dump() {
+        int size = (int) Math.min(recorded, capacity);
+        StringBuilder builder = new StringBuilder(size * 48);
+        for (long i = recorded - size; i < recorded; i++) {
+            int slot = (int) (i % capacity);
+            builder.append(timestamps[slot]).append(' ')
+                    .append(EVENT_TYPES[types[slot]]).append(" ssid=")
+                    .append(Integer.toHexString(SSIDIds[slot])).append(' ')
+                    .append(firstArgs[slot]).append(' ')
+                    .append(secondArgs[slot]).append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,6 @@
+package com.intentfilter.wificonnect;
+
+public enum ConnectionFailureReason {
+    NO_SCAN_RESULTS, NO_MATCHING_SSID, ENABLE_NETWORK_FAILED, ATTEMPT_TIMED_OUT, CANDIDATES_EXHAUSTED, TIMED_OUT,
+    COMMAND_FAILED
+}
@@ -0,0 +1,120 @@
+package com.intentfilter.wificonnect;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class ConnectionMetrics {
+    private final LatencyHistogram[] phaseLatencies = new LatencyHistogram[ConnectionPhase.values().length];
+    private final LatencyHistogram timeToConnect = new LatencyHistogram();
+    private final AtomicLongArray failures = new AtomicLongArray(ConnectionFailureReason.values().length);
+    private final AtomicLongArray attemptFailures = new AtomicLongArray(ConnectionFailureReason.values().length);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong successes = new AtomicLong();
+
+    ConnectionMetrics() {
+        for (int i = 0; i < phaseLatencies.length; i++) {
+            phaseLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    void recordPhase(ConnectionPhase phase, long millis) {
+        phaseLatencies[phase.ordinal()].record(millis);
+    }
+
+    void recordRequest() {
+        requests.incrementAndGet();
+    }
+
+    void recordAttempt(boolean retry) {
+        attempts.incrementAndGet();
+        if (retry) {
+            retries.incrementAndGet();
+        }
+    }
+
+    void recordSuccess(long timeToConnectMillis) {
+        successes.incrementAndGet();
+        timeToConnect.record(timeToConnectMillis);
+    }
+
+    void recordFailure(ConnectionFailureReason reason) {
+        failures.incrementAndGet(reason.ordinal());
+    }
+
+    void recordAttemptFailure(ConnectionFailureReason reason) {
+        attemptFailures.incrementAndGet(reason.ordinal());
+    }
+
+    public LatencyHistogram getLatency(ConnectionPhase phase) {
+        return phaseLatencies[phase.ordinal()];
+    }
+
+    public LatencyHistogram getTimeToConnect() {
+        return timeToConnect;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getAttempts() {
+        return attempts.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getSuccesses() {
+        return successes.get();
+    }
+
+    /**
+     * Requests that failed for the reason.
+     */
+    public long getFailures(ConnectionFailureReason reason) {
+        return failures.get(reason.ordinal());
+    }
+
+    /**
+     * Attempts at a single candidate that failed for the reason, the request may still have succeeded.
+     */
+    public long getAttemptFailures(ConnectionFailureReason reason) {
+        return attemptFailures.get(reason.ordinal());
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : phaseLatencies) {
+            histogram.reset();
+        }
+        timeToConnect.reset();
+        for (int i = 0; i < failures.length(); i++) {
+            failures.set(i, 0);
+            attemptFailures.set(i, 0);
+        }
+        requests.set(0);
+        attempts.set(0);
+        retries.set(0);
+        successes.set(0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ConnectionMetrics{requests=").append(getRequests())
+                .append(", attempts=").append(getAttempts())
+                .append(", retries=").append(getRetries())
+                .append(", successes=").append(getSuccesses());
+        for (ConnectionFailureReason reason : ConnectionFailureReason.values()) {
+            builder.append(", ").append(reason).append('=').append(getFailures(reason));
+        }
+        for (ConnectionFailureReason reason : ConnectionFailureReason.values()) {
+            builder.append(", attempt ").append(reason).append('=').append(getAttemptFailures(reason));
+        }
+        for (ConnectionPhase phase : ConnectionPhase.values()) {
+            builder.append(", ").append(phase).append('=').append(getLatency(phase));
+        }
+        return builder.append(", timeToConnect=").append(timeToConnect).append('}').toString();
+    }
+}
@@ -0,0 +1,175 @@
+package com.intentfilter.wificonnect;
+
+import com.intentfilter.wificonnect.ConnectionEventLog.EventType;
+import com.intentfilter.wificonnect.WifiConnectionManager.ConnectionMetricsListener;
+
+/**
+ * Records the phases of the current request into the metrics and the event log. The listener is called out of
+ * the lock, so it may call back into the manager.
+ */
+class ConnectionMetricsRecorder {
+    static final long NOT_SET = -1;
+
+    private final ConnectionMetrics metrics;
+    private final ConnectionEventLog eventLog;
+    private final Clock clock;
+    private ConnectionMetricsListener listener;
+    private int SSIDId = ConnectionEventLog.NO_SSID;
+    private long requestStartedAt = NOT_SET;
+    private long wifiEnabledAt = NOT_SET;
+    private long resultsReceivedAt = NOT_SET;
+    private long networkEnabledAt = NOT_SET;
+    private long networkConnectedAt = NOT_SET;
+
+    ConnectionMetricsRecorder(ConnectionMetrics metrics, ConnectionEventLog eventLog, Clock clock) {
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        this.clock = clock;
+    }
+
+    synchronized void setListener(ConnectionMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    synchronized void onRequestStarted() {
+        requestStartedAt = now();
+        wifiEnabledAt = resultsReceivedAt = networkEnabledAt = networkConnectedAt = NOT_SET;
+        SSIDId = ConnectionEventLog.NO_SSID;
+        metrics.recordRequest();
+        eventLog.record(EventType.REQUEST_STARTED, SSIDId, 0, 0);
+    }
+
+    synchronized void onWifiEnabled() {
+        wifiEnabledAt = now();
+        eventLog.record(EventType.WIFI_ENABLED, SSIDId, 0, 0);
+    }
+
+    void onScanResults(long scanRequestedAt, long resultsReceivedAt) {
+        ConnectionMetricsListener listener;
+        long enabledToScanRequested, scanRequestedToResults;
+        synchronized (this) {
+            this.resultsReceivedAt = resultsReceivedAt != NOT_SET ? resultsReceivedAt : now();
+            eventLog.record(EventType.SCAN_RESULTS, SSIDId, millis(scanRequestedAt, this.resultsReceivedAt), 0);
+            if (scanRequestedAt == NOT_SET) {
+                return;
+            }
+            enabledToScanRequested = recordPhase(ConnectionPhase.ENABLED_TO_SCAN_REQUESTED, wifiEnabledAt,
+                    scanRequestedAt);
+            scanRequestedToResults = recordPhase(ConnectionPhase.SCAN_REQUESTED_TO_RESULTS, scanRequestedAt,
+                    resultsReceivedAt);
+            listener = this.listener;
+        }
+        notifyPhase(listener, ConnectionPhase.ENABLED_TO_SCAN_REQUESTED, enabledToScanRequested);
+        notifyPhase(listener, ConnectionPhase.SCAN_REQUESTED_TO_RESULTS, scanRequestedToResults);
+    }
+
+    void onCandidatesSelected(int candidates) {
+        ConnectionMetricsListener listener;
+        long resultsToCandidateSelected;
+        synchronized (this) {
+            resultsToCandidateSelected = recordPhase(ConnectionPhase.RESULTS_TO_CANDIDATE_SELECTED,
+                    resultsReceivedAt, now());
+            eventLog.record(EventType.CANDIDATES_SELECTED, SSIDId, candidates, 0);
+            listener = this.listener;
+        }
+        notifyPhase(listener, ConnectionPhase.RESULTS_TO_CANDIDATE_SELECTED, resultsToCandidateSelected);
+    }
+
+    synchronized void onAttemptStarted(String SSID, boolean retry) {
+        networkEnabledAt = networkConnectedAt = NOT_SET;
+        SSIDId = WifiSSID.hash(SSID);
+        metrics.recordAttempt(retry);
+        eventLog.record(EventType.ATTEMPT_STARTED, SSIDId, retry ? 1 : 0, 0);
+    }
+
+    synchronized void onNetworkEnabled() {
+        networkEnabledAt = now();
+        eventLog.record(EventType.NETWORK_ENABLED, SSIDId, 0, 0);
+    }
+
+    void onNetworkConnected() {
+        ConnectionMetricsListener listener;
+        long enabledToConnected;
+        synchronized (this) {
+            networkConnectedAt = now();
+            enabledToConnected = recordPhase(ConnectionPhase.NETWORK_ENABLED_TO_CONNECTED, networkEnabledAt,
+                    networkConnectedAt);
+            eventLog.record(EventType.NETWORK_CONNECTED, SSIDId, millis(networkEnabledAt, networkConnectedAt), 0);
+            listener = this.listener;
+        }
+        notifyPhase(listener, ConnectionPhase.NETWORK_ENABLED_TO_CONNECTED, enabledToConnected);
+    }
+
+    void onNetworkBound() {
+        ConnectionMetricsListener listener;
+        long connectedToBound;
+        synchronized (this) {
+            long boundAt = now();
+            connectedToBound = recordPhase(ConnectionPhase.CONNECTED_TO_BOUND, networkConnectedAt, boundAt);
+            eventLog.record(EventType.NETWORK_BOUND, SSIDId, millis(networkConnectedAt, boundAt), 0);
+            listener = this.listener;
+        }
+        notifyPhase(listener, ConnectionPhase.CONNECTED_TO_BOUND, connectedToBound);
+    }
+
+    synchronized void onAttemptFailed(ConnectionFailureReason reason) {
+        metrics.recordAttemptFailure(reason);
+        eventLog.record(EventType.ATTEMPT_FAILED, SSIDId, reason.ordinal(), 0);
+    }
+
+    long onSucceeded() {
+        ConnectionMetricsListener listener;
+        long timeToConnect;
+        synchronized (this) {
+            timeToConnect = elapsedSince(requestStartedAt);
+            metrics.recordSuccess(timeToConnect);
+            eventLog.record(EventType.CONNECTION_ESTABLISHED, SSIDId, (int) timeToConnect, 0);
+            listener = this.listener;
+        }
+        if (listener != null) {
+            listener.onConnectionEstablished(timeToConnect);
+        }
+        return timeToConnect;
+    }
+
+    void onFailed(ConnectionFailureReason reason) {
+        ConnectionMetricsListener listener;
+        long elapsed;
+        synchronized (this) {
+            elapsed = elapsedSince(requestStartedAt);
+            metrics.recordFailure(reason);
+            eventLog.record(EventType.CONNECTION_FAILED, SSIDId, reason.ordinal(), (int) elapsed);
+            listener = this.listener;
+        }
+        if (listener != null) {
+            listener.onConnectionFailed(reason, elapsed);
+        }
+    }
+
+    // Called under the lock, the listener is told about the returned duration once it's released
+    private long recordPhase(ConnectionPhase phase, long startedAt, long endedAt) {
+        if (startedAt == NOT_SET || endedAt == NOT_SET || endedAt < startedAt) {
+            return NOT_SET;
+        }
+        metrics.recordPhase(phase, endedAt - startedAt);
+        return endedAt - startedAt;
+    }
+
+    private static void notifyPhase(ConnectionMetricsListener listener, ConnectionPhase phase, long millis) {
+        if (listener != null && millis != NOT_SET) {
+            listener.onPhaseCompleted(phase, millis);
+        }
+    }
+
+    private static int millis(long startedAt, long endedAt) {
+        return startedAt == NOT_SET || endedAt == NOT_SET ? (int) NOT_SET : (int) (endedAt - startedAt);
+    }
+
+    private long elapsedSince(long startedAt) {
+        return startedAt == NOT_SET ? NOT_SET : now() - startedAt;
+    }
+
+    private long now() {
+        return clock.elapsedRealtime();
+    }
+}
@@ -0,0 +1,6 @@
+package com.intentfilter.wificonnect;
+
+public enum ConnectionPhase {
+    ENABLED_TO_SCAN_REQUESTED, SCAN_REQUESTED_TO_RESULTS, RESULTS_TO_CANDIDATE_SELECTED,
+    NETWORK_ENABLED_TO_CONNECTED, CONNECTED_TO_BOUND
+}
@@ -0,0 +1,46 @@
+package com.intentfilter.wificonnect;
+
+public class ConnectionPolicy {
+    private static final int DEFAULT_MAX_CANDIDATES = 3;
+    private static final long DEFAULT_ATTEMPT_TIMEOUT_MILLIS = 15000;
+    private static final long DEFAULT_TOTAL_TIMEOUT_MILLIS = 60000;
+
+    private final int maxCandidates;
+    private final long attemptTimeoutMillis;
+    private final long totalTimeoutMillis;
+
+    public ConnectionPolicy(int maxCandidates, long attemptTimeoutMillis, long totalTimeoutMillis) {
+        if (maxCandidates < 1 || attemptTimeoutMillis <= 0 || totalTimeoutMillis < attemptTimeoutMillis) {
+            throw new IllegalArgumentException("Invalid connection policy");
+        }
+        this.maxCandidates = maxCandidates;
+        this.attemptTimeoutMillis = attemptTimeoutMillis;
+        this.totalTimeoutMillis = totalTimeoutMillis;
+    }
+
+    public static ConnectionPolicy defaultPolicy() {
+        return new ConnectionPolicy(DEFAULT_MAX_CANDIDATES, DEFAULT_ATTEMPT_TIMEOUT_MILLIS,
+                DEFAULT_TOTAL_TIMEOUT_MILLIS);
+    }
+
+    public int getMaxCandidates() {
+        return maxCandidates;
+    }
+
+    public long getAttemptTimeoutMillis() {
+        return attemptTimeoutMillis;
+    }
+
+    /**
+     * Budget of the whole request, counted from the connect call, so waiting for WiFi and scanning spend it too.
+     */
+    public long getTotalTimeoutMillis() {
+        return totalTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPolicy{maxCandidates=" + maxCandidates + ", attemptTimeout=" + attemptTimeoutMillis
+                + ", totalTimeout=" + totalTimeoutMillis + "}";
+    }
+}
@@ -0,0 +1,109 @@
+package com.intentfilter.wificonnect;
+
+import com.intentfilter.wificonnect.WifiConnectionManager.ConnectionStateChangedListener;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+class ConnectionRequest {
+    static final int NO_ATTEMPT = -1;
+
+    final SSIDMatcher matcher;
+    final long maxScanAgeMillis;
+    final ConnectionStateChangedListener listener;
+    final boolean bindToNetwork;
+    final long deadline;
+    // Attempt timeouts are posted with this token, the request-level timeout with the request itself
+    final Object attemptToken = new Object();
+    private final AtomicReference<ConnectionState> state = new AtomicReference<>(ConnectionState.WAITING_FOR_WIFI);
+    private final AtomicInteger attempt = new AtomicInteger(NO_ATTEMPT);
+    private volatile List<String> candidates = Collections.emptyList();
+    private volatile boolean waitingForBinding;
+    private volatile boolean configuredCandidates;
+    private volatile Runnable abortCallback;
+
+    /**
+     * @param deadline elapsed realtime by which the whole request, from waiting for WiFi on, has to succeed
+     */
+    ConnectionRequest(SSIDMatcher matcher, long maxScanAgeMillis, ConnectionStateChangedListener listener,
+                      boolean bindToNetwork, long deadline) {
+        this.matcher = matcher;
+        this.maxScanAgeMillis = maxScanAgeMillis;
+        this.listener = listener;
+        this.bindToNetwork = bindToNetwork;
+        this.deadline = deadline;
+    }
+
+    ConnectionState getState() {
+        return state.get();
+    }
+
+    boolean transition(ConnectionState from, ConnectionState to) {
+        return state.compareAndSet(from, to);
+    }
+
+    boolean finish(ConnectionState terminalState) {
+        ConnectionState current;
+        do {
+            current = state.get();
+            if (current.isTerminal()) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, terminalState));
+        return true;
+    }
+
+    void setCandidates(List<String> candidates) {
+        this.candidates = candidates;
+    }
+
+    void setConfiguredCandidates(boolean configuredCandidates) {
+        this.configuredCandidates = configuredCandidates;
+    }
+
+    boolean hasConfiguredCandidates() {
+        return configuredCandidates;
+    }
+
+    List<String> getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Moves on from the given attempt, returns the new attempt or {@link #NO_ATTEMPT} if another thread already
+     * moved on from it.
+     */
+    int nextAttempt(int currentAttempt) {
+        return attempt.compareAndSet(currentAttempt, currentAttempt + 1) ? currentAttempt + 1 : NO_ATTEMPT;
+    }
+
+    int getAttempt() {
+        return attempt.get();
+    }
+
+    String getCandidate() {
+        int current = attempt.get();
+        return current >= 0 && current < candidates.size() ? candidates.get(current) : null;
+    }
+
+    /**
+     * Run once the request is aborted, either explicitly or by a newer request superseding it.
+     */
+    void setAbortCallback(Runnable abortCallback) {
+        this.abortCallback = abortCallback;
+    }
+
+    Runnable getAbortCallback() {
+        return abortCallback;
+    }
+
+    boolean isWaitingForBinding() {
+        return waitingForBinding;
+    }
+
+    void setWaitingForBinding(boolean waitingForBinding) {
+        this.waitingForBinding = waitingForBinding;
+    }
+}
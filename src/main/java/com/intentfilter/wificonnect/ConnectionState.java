@@ -0,0 +1,9 @@
+package com.intentfilter.wificonnect;
+
+public enum ConnectionState {
+    IDLE, WAITING_FOR_WIFI, SCANNING, CONNECTING, CONNECTED, FAILED, ABORTED;
+
+    public boolean isTerminal() {
+        return this == CONNECTED || this == FAILED || this == ABORTED;
+    }
+}
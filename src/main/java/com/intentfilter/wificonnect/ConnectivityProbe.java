@@ -0,0 +1,93 @@
+package com.intentfilter.wificonnect;
+
+import com.intentfilter.wificonnect.helpers.Logger;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLConnection;
+
+public class ConnectivityProbe {
+    private static final Logger LOGGER = Logger.loggerFor(ConnectivityProbe.class);
+
+    private final String url;
+    private final String host;
+    private final int port;
+
+    private ConnectivityProbe(String url, String host, int port) {
+        this.url = url;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Expects HTTP 204 from the URL, as served by generate_204 style endpoints. A redirect or a page in its place
+     * means a captive portal.
+     */
+    public static ConnectivityProbe http(String url) {
+        if (url == null) {
+            throw new IllegalArgumentException("Probe URL can't be null");
+        }
+        return new ConnectivityProbe(url, null, 0);
+    }
+
+    /**
+     * Expects a TCP connection to the host and port to succeed, it can't tell a captive portal apart.
+     */
+    public static ConnectivityProbe tcp(String host, int port) {
+        if (host == null || port <= 0 || port > 65535) {
+            throw new IllegalArgumentException("Invalid probe address");
+        }
+        return new ConnectivityProbe(null, host, port);
+    }
+
+    ValidationResult probe(ProbeTransport transport, int timeoutMillis) {
+        try {
+            return url != null ? probeHttp(transport, timeoutMillis) : probeTcp(transport, timeoutMillis);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.d("Probe %s failed: %s", this, e);
+            return ValidationResult.NO_CONNECTIVITY;
+        }
+    }
+
+    private ValidationResult probeHttp(ProbeTransport transport, int timeoutMillis) throws IOException {
+        URLConnection connection = transport.openConnection(new URL(url));
+        if (!(connection instanceof HttpURLConnection)) {
+            return ValidationResult.NO_CONNECTIVITY;
+        }
+        HttpURLConnection httpConnection = (HttpURLConnection) connection;
+        try {
+            httpConnection.setInstanceFollowRedirects(false);
+            httpConnection.setConnectTimeout(timeoutMillis);
+            httpConnection.setReadTimeout(timeoutMillis);
+            httpConnection.setUseCaches(false);
+            int responseCode = httpConnection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NO_CONTENT
+                    || (responseCode == HttpURLConnection.HTTP_OK && httpConnection.getContentLength() == 0)) {
+                return ValidationResult.VALIDATED;
+            }
+            // Portals answer the probe themselves, with a redirect to their login page or the page itself
+            return responseCode >= 200 && responseCode < 400 ? ValidationResult.CAPTIVE_PORTAL
+                    : ValidationResult.NO_CONNECTIVITY;
+        } finally {
+            httpConnection.disconnect();
+        }
+    }
+
+    private ValidationResult probeTcp(ProbeTransport transport, int timeoutMillis) throws IOException {
+        Socket socket = transport.createSocket();
+        try {
+            socket.connect(new InetSocketAddress(transport.resolve(host), port), timeoutMillis);
+            return ValidationResult.VALIDATED;
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return url != null ? url : host + ":" + port;
+    }
+}
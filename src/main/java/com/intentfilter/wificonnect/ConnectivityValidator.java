@@ -0,0 +1,182 @@
+package com.intentfilter.wificonnect;
+
+import android.net.Network;
+import android.net.wifi.WifiInfo;
+
+import com.intentfilter.wificonnect.WifiConnectionManager.ValidationListener;
+import com.intentfilter.wificonnect.helpers.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the connectivity probes of the {@link ValidationPolicy} in parallel and remembers per BSSID which
+ * networks were validated, so reconnecting to them within the TTL skips probing.
+ */
+class ConnectivityValidator {
+    // Reported instead of the real BSSID when the app lacks location permission
+    private static final String UNKNOWN_BSSID = "02:00:00:00:00:00";
+    private static final Map<WifiBackend, ConnectivityValidator> validators = new HashMap<>();
+
+    private final WifiBackend backend;
+    private final Logger logger;
+    private final Map<String, Long> validatedAtByBSSID = new HashMap<>();
+    private final ExecutorService probeExecutor;
+    private volatile ValidationPolicy policy = ValidationPolicy.defaultPolicy();
+
+    ConnectivityValidator(WifiBackend backend) {
+        this.backend = backend;
+        this.logger = Logger.loggerFor(ConnectivityValidator.class);
+        this.probeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, ConnectivityValidator.class.getSimpleName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    static synchronized ConnectivityValidator forBackend(WifiBackend backend) {
+        ConnectivityValidator validator = validators.get(backend);
+        if (validator == null) {
+            validator = new ConnectivityValidator(backend);
+            validators.put(backend, validator);
+        }
+        return validator;
+    }
+
+    /**
+     * Interrupts the backend's running probes and stops its probe threads.
+     */
+    static synchronized void release(WifiBackend backend) {
+        ConnectivityValidator validator = validators.remove(backend);
+        if (validator != null) {
+            validator.probeExecutor.shutdownNow();
+        }
+    }
+
+    void setPolicy(ValidationPolicy policy) {
+        this.policy = policy;
+    }
+
+    ValidationPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Validates the network the process is bound to, or the default network when not bound. Only results of
+     * probes sent over a bound WiFi network are cached, the default network may well be cellular.
+     */
+    void validateBoundNetwork(final Scheduler resultScheduler, final ValidationListener listener) {
+        probeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Network network = backend.getBoundNetworkForProcess();
+                String BSSID = null;
+                if (network != null && backend.isWifiNetwork(network)) {
+                    WifiInfo connectionInfo = backend.getConnectionInfo();
+                    BSSID = connectionInfo != null ? connectionInfo.getBSSID() : null;
+                }
+                ProbeTransport transport = network != null ? ProbeTransport.forNetwork(network)
+                        : ProbeTransport.DEFAULT;
+                final ValidationResult result = validate(transport, BSSID);
+                resultScheduler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onValidationFinished(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Blocks until a probe validates the network or all probes finished or timed out. The result is cached for
+     * the BSSID, which must be that of the WiFi network the transport probes over, or null to skip the cache.
+     */
+    ValidationResult validate(ProbeTransport transport, String BSSID) {
+        ValidationPolicy policy = this.policy;
+        boolean cacheable = BSSID != null && !UNKNOWN_BSSID.equals(BSSID) && policy.getCacheTtlMillis() > 0;
+        if (cacheable && isValidatedRecently(BSSID, policy.getCacheTtlMillis())) {
+            logger.d("%s was validated recently, skipping probes", BSSID);
+            return ValidationResult.VALIDATED;
+        }
+
+        ValidationResult result = probe(transport, policy);
+        logger.i("Network validation result: %s", result);
+        synchronized (validatedAtByBSSID) {
+            if (cacheable && result == ValidationResult.VALIDATED) {
+                validatedAtByBSSID.put(BSSID, backend.getClock().elapsedRealtime());
+            } else if (BSSID != null) {
+                validatedAtByBSSID.remove(BSSID);
+            }
+        }
+        return result;
+    }
+
+    void clearCache() {
+        synchronized (validatedAtByBSSID) {
+            validatedAtByBSSID.clear();
+        }
+    }
+
+    private boolean isValidatedRecently(String BSSID, long ttlMillis) {
+        synchronized (validatedAtByBSSID) {
+            Long validatedAt = validatedAtByBSSID.get(BSSID);
+            return validatedAt != null && backend.getClock().elapsedRealtime() - validatedAt < ttlMillis;
+        }
+    }
+
+    private ValidationResult probe(final ProbeTransport transport, ValidationPolicy policy) {
+        final int timeoutMillis = policy.getProbeTimeoutMillis();
+        CompletionService<ValidationResult> completionService = new ExecutorCompletionService<>(probeExecutor);
+        List<Future<ValidationResult>> futures = new ArrayList<>(policy.getProbes().size());
+        for (final ConnectivityProbe probe : policy.getProbes()) {
+            futures.add(completionService.submit(new Callable<ValidationResult>() {
+                @Override
+                public ValidationResult call() {
+                    return probe.probe(transport, timeoutMillis);
+                }
+            }));
+        }
+
+        // Connecting and reading are bounded separately. Waits on real threads, so not on the backend clock
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2L * timeoutMillis);
+        ValidationResult result = ValidationResult.NO_CONNECTIVITY;
+        try {
+            for (int i = 0; i < futures.size() && result != ValidationResult.VALIDATED; i++) {
+                long remainingNanos = deadline - System.nanoTime();
+                Future<ValidationResult> completed = completionService.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                if (completed == null) {
+                    logger.d("Probes timed out");
+                    break;
+                }
+                ValidationResult probeResult = completed.get();
+                if (probeResult == ValidationResult.VALIDATED || probeResult == ValidationResult.CAPTIVE_PORTAL) {
+                    result = probeResult;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.e("Probe failed", e.getCause());
+        } finally {
+            for (Future<ValidationResult> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,62 @@
+package com.intentfilter.wificonnect;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+
+class HandlerScheduler implements Scheduler {
+    private final Handler handler;
+    private final HandlerThread thread;
+
+    HandlerScheduler(Handler handler) {
+        this(handler, null);
+    }
+
+    private HandlerScheduler(Handler handler, HandlerThread thread) {
+        this.handler = handler;
+        this.thread = thread;
+    }
+
+    static HandlerScheduler mainThread() {
+        return new HandlerScheduler(new Handler(Looper.getMainLooper()));
+    }
+
+    static HandlerScheduler newThread(String name) {
+        HandlerThread thread = new HandlerThread(name);
+        thread.start();
+        return new HandlerScheduler(new Handler(thread.getLooper()), thread);
+    }
+
+    @Override
+    public void post(Runnable task) {
+        handler.post(task);
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMillis) {
+        handler.postDelayed(task, delayMillis);
+    }
+
+    @Override
+    public void postDelayed(Runnable task, Object token, long delayMillis) {
+        handler.postAtTime(task, token, SystemClock.uptimeMillis() + delayMillis);
+    }
+
+    @Override
+    public void removeCallbacks(Runnable task) {
+        handler.removeCallbacks(task);
+    }
+
+    @Override
+    public void removeCallbacksAndMessages(Object token) {
+        handler.removeCallbacksAndMessages(token);
+    }
+
+    @Override
+    public void quit() {
+        if (thread != null) {
+            thread.quit();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.intentfilter.wificonnect;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+    // Bucket i counts latencies up to 2^i ms, the last bucket everything above 2^(BUCKETS - 2) ms
+    private static final int BUCKETS = 19;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    void record(long millis) {
+        if (millis < 0) {
+            return;
+        }
+        buckets.incrementAndGet(bucketFor(millis));
+        count.incrementAndGet();
+        totalMillis.addAndGet(millis);
+
+        long max = maxMillis.get();
+        while (millis > max && !maxMillis.compareAndSet(max, millis)) {
+            max = maxMillis.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMeanMillis() {
+        long samples = count.get();
+        return samples == 0 ? 0 : totalMillis.get() / samples;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile (0-100), accurate to a factor of two.
+     */
+    public long getPercentileMillis(double percentile) {
+        long samples = count.get();
+        if (samples == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(samples * Math.min(100, Math.max(0, percentile)) / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(1L << i, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalMillis.set(0);
+        maxMillis.set(0);
+    }
+
+    private static int bucketFor(long millis) {
+        int bucket = millis <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(millis - 1);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{count=" + getCount() + ", mean=" + getMeanMillis() + "ms, p50="
+                + getPercentileMillis(50) + "ms, p90=" + getPercentileMillis(90) + "ms, max=" + getMaxMillis() + "ms}";
+    }
+}
@@ -0,0 +1,75 @@
+package com.intentfilter.wificonnect;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts what the listener watchdog cleaned up. Growing numbers point at callers that don't abort or remove
+ * their listeners.
+ */
+public class ListenerDiagnostics {
+    private final AtomicLong collectedListeners = new AtomicLong();
+    private final AtomicLong idleListeners = new AtomicLong();
+    private final AtomicLong orphanedReceivers = new AtomicLong();
+    private final AtomicLong orphanedNetworkCallbacks = new AtomicLong();
+
+    ListenerDiagnostics() {
+    }
+
+    void recordCollectedListener() {
+        collectedListeners.incrementAndGet();
+    }
+
+    void recordIdleListener() {
+        idleListeners.incrementAndGet();
+    }
+
+    void recordOrphanedReceiver() {
+        orphanedReceivers.incrementAndGet();
+    }
+
+    void recordOrphanedNetworkCallback() {
+        orphanedNetworkCallbacks.incrementAndGet();
+    }
+
+    /**
+     * Weakly held listeners dropped after being garbage collected without being removed.
+     */
+    public long getCollectedListeners() {
+        return collectedListeners.get();
+    }
+
+    /**
+     * Listeners dropped after receiving no event within their idle timeout.
+     */
+    public long getIdleListeners() {
+        return idleListeners.get();
+    }
+
+    /**
+     * Broadcast receivers unregistered while no listener was left for them.
+     */
+    public long getOrphanedReceivers() {
+        return orphanedReceivers.get();
+    }
+
+    /**
+     * Network callbacks unregistered after no binding used them for a while.
+     */
+    public long getOrphanedNetworkCallbacks() {
+        return orphanedNetworkCallbacks.get();
+    }
+
+    public void reset() {
+        collectedListeners.set(0);
+        idleListeners.set(0);
+        orphanedReceivers.set(0);
+        orphanedNetworkCallbacks.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "ListenerDiagnostics{collectedListeners=" + getCollectedListeners() + ", idleListeners="
+                + getIdleListeners() + ", orphanedReceivers=" + getOrphanedReceivers()
+                + ", orphanedNetworkCallbacks=" + getOrphanedNetworkCallbacks() + "}";
+    }
+}
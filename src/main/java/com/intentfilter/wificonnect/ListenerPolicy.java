@@ -0,0 +1,38 @@
+package com.intentfilter.wificonnect;
+
+/**
+ * How listeners are held while registered for broadcasts. With weak references a manager the app no longer
+ * references stops receiving events and is cleaned up, so keep a reference to it while its connects run.
+ * Registrations that received no event within the idle timeout are dropped by the watchdog.
+ */
+public class ListenerPolicy {
+    public static final long NO_IDLE_TIMEOUT = 0;
+
+    private final boolean weakReferences;
+    private final long idleTimeoutMillis;
+
+    public ListenerPolicy(boolean weakReferences, long idleTimeoutMillis) {
+        if (idleTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Idle timeout can't be negative");
+        }
+        this.weakReferences = weakReferences;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public static ListenerPolicy defaultPolicy() {
+        return new ListenerPolicy(false, NO_IDLE_TIMEOUT);
+    }
+
+    public boolean usesWeakReferences() {
+        return weakReferences;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ListenerPolicy{weakReferences=" + weakReferences + ", idleTimeout=" + idleTimeoutMillis + "}";
+    }
+}
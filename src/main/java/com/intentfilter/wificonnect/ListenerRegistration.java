@@ -0,0 +1,38 @@
+package com.intentfilter.wificonnect;
+
+import java.lang.ref.WeakReference;
+
+final class ListenerRegistration<L> {
+    private final L strongListener;
+    private final WeakReference<L> weakListener;
+    private final long idleTimeoutMillis;
+    private final Clock clock;
+    private volatile long lastActiveAt;
+
+    ListenerRegistration(L listener, ListenerPolicy policy, Clock clock) {
+        this.strongListener = policy.usesWeakReferences() ? null : listener;
+        this.weakListener = policy.usesWeakReferences() ? new WeakReference<>(listener) : null;
+        this.idleTimeoutMillis = policy.getIdleTimeoutMillis();
+        this.clock = clock;
+        this.lastActiveAt = clock.elapsedRealtime();
+    }
+
+    /**
+     * Returns the listener, null once it was garbage collected.
+     */
+    L get() {
+        return weakListener != null ? weakListener.get() : strongListener;
+    }
+
+    boolean isFor(Object listener) {
+        return get() == listener;
+    }
+
+    void touch() {
+        lastActiveAt = clock.elapsedRealtime();
+    }
+
+    boolean isIdle(long now) {
+        return idleTimeoutMillis != ListenerPolicy.NO_IDLE_TIMEOUT && now - lastActiveAt >= idleTimeoutMillis;
+    }
+}
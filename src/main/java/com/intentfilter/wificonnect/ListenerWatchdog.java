@@ -0,0 +1,76 @@
+package com.intentfilter.wificonnect;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.LOLLIPOP;
+
+/**
+ * Periodically drops collected and idle listeners, and unregisters broadcast receivers and network callbacks
+ * left without users, so a stalled connect or a missing abort doesn't keep them for the life of the process.
+ * Runs only while something is registered.
+ */
+class ListenerWatchdog {
+    static final long SWEEP_INTERVAL_MILLIS = 60 * 1000;
+    static final long NETWORK_CALLBACK_IDLE_MILLIS = 10 * 60 * 1000;
+    private static final Map<WifiBackend, ListenerWatchdog> watchdogs = new HashMap<>();
+
+    private final WifiBackend backend;
+    private final ListenerDiagnostics diagnostics;
+    private final Scheduler scheduler;
+    private boolean scheduled;
+    private final Runnable sweep = new Runnable() {
+        @Override
+        public void run() {
+            sweep();
+        }
+    };
+
+    private ListenerWatchdog(WifiBackend backend) {
+        this.backend = backend;
+        this.diagnostics = WifiConnectionManager.getListenerDiagnostics();
+        this.scheduler = backend.getMainScheduler();
+    }
+
+    static synchronized ListenerWatchdog forBackend(WifiBackend backend) {
+        ListenerWatchdog watchdog = watchdogs.get(backend);
+        if (watchdog == null) {
+            watchdog = new ListenerWatchdog(backend);
+            watchdogs.put(backend, watchdog);
+        }
+        return watchdog;
+    }
+
+    static synchronized void release(WifiBackend backend) {
+        ListenerWatchdog watchdog = watchdogs.remove(backend);
+        if (watchdog != null) {
+            watchdog.stop();
+        }
+    }
+
+    synchronized void start() {
+        if (!scheduled) {
+            scheduled = true;
+            scheduler.postDelayed(sweep, SWEEP_INTERVAL_MILLIS);
+        }
+    }
+
+    private synchronized void stop() {
+        scheduled = false;
+        scheduler.removeCallbacks(sweep);
+    }
+
+    private void sweep() {
+        synchronized (this) {
+            scheduled = false;
+        }
+        boolean registered = WifiEventDispatcher.forBackend(backend).sweep(diagnostics);
+        if (SDK_INT >= LOLLIPOP) {
+            registered |= WifiNetworkTracker.forBackend(backend).sweep(diagnostics, NETWORK_CALLBACK_IDLE_MILLIS);
+        }
+        if (registered) {
+            start();
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.intentfilter.wificonnect;
+
+import com.intentfilter.wificonnect.helpers.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers per SSID how the last successful connection went, so that candidates which connected fast and
+ * reliably before are tried first, the AP last connected to keeps its hysteresis margin across restarts and
+ * saved networks can be enabled by their network id. Loading and writing the file happen on a background
+ * thread, updates are batched and written at most once per {@link #FLUSH_DELAY_MILLIS}.
+ */
+class NetworkHistoryStore {
+    static final String FILE_NAME = "wificonnect_history.bin";
+    static final long FLUSH_DELAY_MILLIS = 5 * 1000;
+    static final int MAX_RECORDS = 64;
+    private static final int MAGIC = 0x57434e48;
+    private static final int VERSION = 2;
+    private static final Map<WifiBackend, NetworkHistoryStore> stores = new HashMap<>();
+
+    private final File file;
+    private final Logger logger;
+    private final Map<WifiSSID, Record> records = new HashMap<>();
+    private final Scheduler ioScheduler;
+    private final SignalScorer signalScorer;
+    private boolean flushScheduled;
+
+    private final Runnable load = new Runnable() {
+        @Override
+        public void run() {
+            List<Record> loaded = read();
+            Record lastConnected = null;
+            synchronized (NetworkHistoryStore.this) {
+                for (Record record : loaded) {
+                    WifiSSID SSID = WifiSSID.of(record.SSID);
+                    Record recorded = records.get(SSID);
+                    if (recorded != null) {
+                        recorded.mergeOlder(record);
+                    } else if (records.size() < MAX_RECORDS) {
+                        records.put(SSID, record);
+                    }
+                    if (lastConnected == null || record.lastConnectedAt > lastConnected.lastConnectedAt) {
+                        lastConnected = record;
+                    }
+                }
+            }
+            if (lastConnected != null && lastConnected.BSSID != null) {
+                signalScorer.setPreferredBSSIDIfUnset(lastConnected.BSSID);
+            }
+            logger.d("Loaded connection history of %d networks", loaded.size());
+        }
+    };
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            List<Record> snapshot;
+            synchronized (NetworkHistoryStore.this) {
+                flushScheduled = false;
+                snapshot = new ArrayList<>(records.size());
+                for (Record record : records.values()) {
+                    snapshot.add(record.copy());
+                }
+            }
+            write(snapshot);
+        }
+    };
+
+    NetworkHistoryStore(File directory, Scheduler ioScheduler, SignalScorer signalScorer) {
+        this.file = new File(directory, FILE_NAME);
+        this.ioScheduler = ioScheduler;
+        this.signalScorer = signalScorer;
+        this.logger = Logger.loggerFor(NetworkHistoryStore.class);
+    }
+
+    static synchronized NetworkHistoryStore forBackend(WifiBackend backend) {
+        NetworkHistoryStore store = stores.get(backend);
+        if (store == null) {
+            store = new NetworkHistoryStore(backend.getFilesDir(),
+                    backend.newBackgroundScheduler(NetworkHistoryStore.class.getSimpleName()),
+                    SignalScorer.forBackend(backend));
+            store.ioScheduler.post(store.load);
+            stores.put(backend, store);
+        }
+        return store;
+    }
+
+    /**
+     * Writes pending updates right away and then stops the backend's I/O thread.
+     */
+    static synchronized void release(WifiBackend backend) {
+        NetworkHistoryStore store = stores.remove(backend);
+        if (store != null) {
+            store.shutdown();
+        }
+    }
+
+    synchronized void recordSuccess(String SSID, String BSSID, int networkId, long timeToConnectMillis) {
+        Record record = recordFor(SSID);
+        record.BSSID = BSSID;
+        record.networkId = networkId;
+        record.timeToConnectMillis = (int) Math.min(Integer.MAX_VALUE, timeToConnectMillis);
+        record.successes++;
+        record.lastConnectedAt = System.currentTimeMillis();
+        scheduleFlush();
+    }
+
+    /**
+     * The network id of a failed connection isn't trusted again until the SSID connects, it may have been removed.
+     */
+    synchronized void recordFailure(String SSID) {
+        Record record = recordFor(SSID);
+        record.failures++;
+        record.networkId = Record.UNKNOWN;
+        scheduleFlush();
+    }
+
+    /**
+     * @return the network id the SSID last connected with, {@link Record#UNKNOWN} if none
+     */
+    synchronized int getNetworkId(String SSID) {
+        Record record = records.get(WifiSSID.of(SSID));
+        return record != null ? record.networkId : Record.UNKNOWN;
+    }
+
+    /**
+     * Stable-sorts SSIDs that connected before ahead of the others, the most reliable and then the fastest first.
+     * SSIDs without history keep their order.
+     */
+    synchronized List<String> rank(List<String> SSIDs) {
+        if (SSIDs.size() < 2 || records.isEmpty()) {
+            return SSIDs;
+        }
+        final Map<String, Record> history = new HashMap<>(SSIDs.size());
+        for (String SSID : SSIDs) {
+            Record record = records.get(WifiSSID.of(SSID));
+            if (record != null && record.successes > 0) {
+                history.put(SSID, record);
+            }
+        }
+        if (history.isEmpty()) {
+            return SSIDs;
+        }
+        List<String> ranked = new ArrayList<>(SSIDs);
+        Collections.sort(ranked, new Comparator<String>() {
+            @Override
+            public int compare(String SSID, String anotherSSID) {
+                Record record = history.get(SSID);
+                Record anotherRecord = history.get(anotherSSID);
+                if (record == null || anotherRecord == null) {
+                    return record == anotherRecord ? 0 : record == null ? 1 : -1;
+                }
+                int reliability = Double.compare(anotherRecord.successRate(), record.successRate());
+                return reliability != 0 ? reliability : compareInts(record.timeToConnectMillis,
+                        anotherRecord.timeToConnectMillis);
+            }
+        });
+        return ranked;
+    }
+
+    synchronized void clear() {
+        records.clear();
+        scheduleFlush();
+    }
+
+    private synchronized void shutdown() {
+        if (flushScheduled) {
+            ioScheduler.removeCallbacks(flush);
+            ioScheduler.post(flush);
+        }
+        ioScheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                ioScheduler.quit();
+            }
+        });
+    }
+
+    private Record recordFor(String SSID) {
+        WifiSSID key = WifiSSID.of(SSID);
+        Record record = records.get(key);
+        if (record == null) {
+            if (records.size() >= MAX_RECORDS) {
+                evictOldest();
+            }
+            record = new Record(key.unquoted());
+            records.put(key, record);
+        }
+        return record;
+    }
+
+    private void evictOldest() {
+        WifiSSID oldest = null;
+        long oldestConnectedAt = Long.MAX_VALUE;
+        for (Map.Entry<WifiSSID, Record> entry : records.entrySet()) {
+            if (entry.getValue().lastConnectedAt < oldestConnectedAt) {
+                oldestConnectedAt = entry.getValue().lastConnectedAt;
+                oldest = entry.getKey();
+            }
+        }
+        records.remove(oldest);
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            ioScheduler.postDelayed(flush, FLUSH_DELAY_MILLIS);
+        }
+    }
+
+    private List<Record> read() {
+        List<Record> loaded = new ArrayList<>();
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                logger.i("Ignoring connection history in unknown format");
+                return loaded;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                Record record = new Record(input.readUTF());
+                record.BSSID = input.readBoolean() ? input.readUTF() : null;
+                record.networkId = input.readInt();
+                record.timeToConnectMillis = input.readInt();
+                record.successes = input.readInt();
+                record.failures = input.readInt();
+                record.lastConnectedAt = input.readLong();
+                loaded.add(record);
+            }
+        } catch (FileNotFoundException e) {
+            logger.d("No connection history yet");
+        } catch (IOException e) {
+            logger.e("Couldn't read connection history", e);
+            loaded.clear();
+        } finally {
+            close(input);
+        }
+        return loaded;
+    }
+
+    private void write(List<Record> snapshot) {
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(snapshot.size());
+            for (Record record : snapshot) {
+                output.writeUTF(record.SSID);
+                output.writeBoolean(record.BSSID != null);
+                if (record.BSSID != null) {
+                    output.writeUTF(record.BSSID);
+                }
+                output.writeInt(record.networkId);
+                output.writeInt(record.timeToConnectMillis);
+                output.writeInt(record.successes);
+                output.writeInt(record.failures);
+                output.writeLong(record.lastConnectedAt);
+            }
+            output.close();
+            output = null;
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Couldn't rename " + tempFile + " to " + file);
+            }
+            logger.d("Saved connection history of %d networks", snapshot.size());
+        } catch (IOException e) {
+            logger.e("Couldn't save connection history", e);
+            close(output);
+            tempFile.delete();
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static int compareInts(int x, int y) {
+        return x < y ? -1 : (x == y ? 0 : 1);
+    }
+
+    static final class Record {
+        static final int UNKNOWN = -1;
+
+        final String SSID;
+        String BSSID;
+        int networkId = UNKNOWN;
+        int timeToConnectMillis = Integer.MAX_VALUE;
+        int successes;
+        int failures;
+        long lastConnectedAt;
+
+        Record(String SSID) {
+            this.SSID = SSID;
+        }
+
+        double successRate() {
+            return (successes + 1.0) / (successes + failures + 2.0);
+        }
+
+        /**
+         * Adds the counters of a record from before this one was created, its last connection is kept unless
+         * this one has connected since. Its network id is dropped when this one failed.
+         */
+        void mergeOlder(Record older) {
+            if (lastConnectedAt == 0) {
+                BSSID = older.BSSID;
+                networkId = failures == 0 ? older.networkId : UNKNOWN;
+                timeToConnectMillis = older.timeToConnectMillis;
+                lastConnectedAt = older.lastConnectedAt;
+            }
+            successes += older.successes;
+            failures += older.failures;
+        }
+
+        Record copy() {
+            Record copy = new Record(SSID);
+            copy.BSSID = BSSID;
+            copy.networkId = networkId;
+            copy.timeToConnectMillis = timeToConnectMillis;
+            copy.successes = successes;
+            copy.failures = failures;
+            copy.lastConnectedAt = lastConnectedAt;
+            return copy;
+        }
+    }
+}
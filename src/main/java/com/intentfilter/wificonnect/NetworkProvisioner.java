@@ -0,0 +1,194 @@
+package com.intentfilter.wificonnect;
+
+import android.annotation.TargetApi;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiEnterpriseConfig;
+
+import com.intentfilter.wificonnect.helpers.Logger;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.JELLY_BEAN_MR2;
+import static android.os.Build.VERSION_CODES.LOLLIPOP;
+import static android.os.Build.VERSION_CODES.M;
+
+/**
+ * Adds or updates many configurations reading the configured networks once, instead of once per network.
+ */
+class NetworkProvisioner {
+    // The platform renormalizes priorities close to a million, compact well before it does
+    static final int PRIORITY_COMPACTION_THRESHOLD = 10000;
+    private static final int NETWORK_ID_NOT_FOUND = -1;
+
+    private final WifiBackend backend;
+    private final ConfiguredNetworksCache configuredNetworks;
+    private final Logger logger;
+
+    NetworkProvisioner(WifiBackend backend, ConfiguredNetworksCache configuredNetworks) {
+        this.backend = backend;
+        this.configuredNetworks = configuredNetworks;
+        this.logger = Logger.loggerFor(NetworkProvisioner.class);
+    }
+
+    /**
+     * Earlier configurations get higher priorities. Configurations identical to configured ones are skipped.
+     * The configurations passed in are left untouched, copies of them are added or updated.
+     */
+    ProvisioningResult provision(List<WifiConfiguration> configurations) {
+        List<WifiConfiguration> configured = configuredNetworks();
+        Map<WifiSSID, WifiConfiguration> configuredBySSID = new HashMap<>(configured.size() * 2);
+        int maxPriority = ConfiguredNetworksCache.NO_PRIORITY;
+        for (WifiConfiguration configuration : configured) {
+            WifiSSID SSID = WifiSSID.of(configuration.SSID);
+            if (SSID != null && !configuredBySSID.containsKey(SSID)) {
+                configuredBySSID.put(SSID, configuration);
+            }
+            maxPriority = Math.max(maxPriority, configuration.priority);
+        }
+
+        boolean compacted = false;
+        if (maxPriority + configurations.size() >= PRIORITY_COMPACTION_THRESHOLD) {
+            maxPriority = compact(configured);
+            compacted = true;
+        }
+
+        int added = 0, updated = 0, unchanged = 0, failed = 0;
+        for (int i = 0, size = configurations.size(); i < size; i++) {
+            WifiConfiguration existing = configuredBySSID.get(WifiSSID.of(configurations.get(i).SSID));
+            if (existing != null && isIdentical(existing, configurations.get(i))) {
+                unchanged++;
+                continue;
+            }
+
+            WifiConfiguration configuration = copyOf(configurations.get(i));
+            configuration.priority = maxPriority + size - i;
+            if (existing != null) {
+                configuration.networkId = existing.networkId;
+                if (backend.updateNetwork(configuration) != NETWORK_ID_NOT_FOUND) {
+                    updated++;
+                } else {
+                    failed++;
+                }
+            } else if (backend.addNetwork(configuration) != NETWORK_ID_NOT_FOUND) {
+                added++;
+            } else {
+                failed++;
+            }
+        }
+
+        configuredNetworks.invalidate();
+        ProvisioningResult result = new ProvisioningResult(added, updated, unchanged, failed, compacted);
+        logger.i("Provisioned networks: %s", result);
+        return result;
+    }
+
+    /**
+     * Renumbers priorities of configured networks to 0..n-1 keeping their order, returns the new max priority.
+     */
+    int compactPriorities() {
+        int maxPriority = compact(configuredNetworks());
+        configuredNetworks.invalidate();
+        return maxPriority;
+    }
+
+    private int compact(List<WifiConfiguration> configured) {
+        List<WifiConfiguration> byPriority = new ArrayList<>(configured);
+        Collections.sort(byPriority, new Comparator<WifiConfiguration>() {
+            @Override
+            public int compare(WifiConfiguration configuration, WifiConfiguration another) {
+                int priority = configuration.priority;
+                return priority < another.priority ? -1 : (priority == another.priority ? 0 : 1);
+            }
+        });
+
+        int priority = ConfiguredNetworksCache.NO_PRIORITY;
+        int previous = Integer.MIN_VALUE;
+        for (WifiConfiguration configuration : byPriority) {
+            if (configuration.priority != previous) {
+                previous = configuration.priority;
+                priority++;
+            }
+            if (configuration.priority != priority) {
+                configuration.priority = priority;
+                backend.updateNetwork(configuration);
+            }
+        }
+        logger.d("Compacted priorities of %d configured networks", byPriority.size());
+        return priority;
+    }
+
+    private List<WifiConfiguration> configuredNetworks() {
+        List<WifiConfiguration> configured = backend.getConfiguredNetworks();
+        return configured != null ? configured : Collections.<WifiConfiguration>emptyList();
+    }
+
+    private static boolean isIdentical(WifiConfiguration existing, WifiConfiguration configuration) {
+        // Configured networks come back with masked keys and credentials, only open configurations can be compared
+        return isOpen(configuration)
+                && existing.hiddenSSID == configuration.hiddenSSID
+                && configuration.allowedKeyManagement.equals(existing.allowedKeyManagement);
+    }
+
+    /**
+     * Open networks allow no key management but NONE. WEP networks allow only NONE as well, they have WEP keys.
+     */
+    private static boolean isOpen(WifiConfiguration configuration) {
+        BitSet keyManagement = configuration.allowedKeyManagement;
+        return keyManagement != null && keyManagement.cardinality() == 1
+                && keyManagement.get(WifiConfiguration.KeyMgmt.NONE) && !hasWepKey(configuration.wepKeys);
+    }
+
+    private static boolean hasWepKey(String[] wepKeys) {
+        if (wepKeys != null) {
+            for (String wepKey : wepKeys) {
+                if (wepKey != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the public fields an app can set, WifiConfiguration's own copy constructor is hidden.
+     */
+    @TargetApi(M)
+    private static WifiConfiguration copyOf(WifiConfiguration source) {
+        WifiConfiguration copy = new WifiConfiguration();
+        copy.SSID = source.SSID;
+        copy.BSSID = source.BSSID;
+        copy.hiddenSSID = source.hiddenSSID;
+        copy.status = source.status;
+        copy.preSharedKey = source.preSharedKey;
+        copy.wepKeys = source.wepKeys != null ? source.wepKeys.clone() : null;
+        copy.wepTxKeyIndex = source.wepTxKeyIndex;
+        copy.allowedKeyManagement = copyOf(source.allowedKeyManagement);
+        copy.allowedProtocols = copyOf(source.allowedProtocols);
+        copy.allowedAuthAlgorithms = copyOf(source.allowedAuthAlgorithms);
+        copy.allowedPairwiseCiphers = copyOf(source.allowedPairwiseCiphers);
+        copy.allowedGroupCiphers = copyOf(source.allowedGroupCiphers);
+        if (SDK_INT >= JELLY_BEAN_MR2 && source.enterpriseConfig != null) {
+            copy.enterpriseConfig = new WifiEnterpriseConfig(source.enterpriseConfig);
+        }
+        if (SDK_INT >= LOLLIPOP) {
+            copy.FQDN = source.FQDN;
+        }
+        if (SDK_INT >= M) {
+            copy.providerFriendlyName = source.providerFriendlyName;
+            copy.roamingConsortiumIds = source.roamingConsortiumIds != null
+                    ? source.roamingConsortiumIds.clone() : null;
+        }
+        return copy;
+    }
+
+    private static BitSet copyOf(BitSet bits) {
+        return bits != null ? (BitSet) bits.clone() : null;
+    }
+}
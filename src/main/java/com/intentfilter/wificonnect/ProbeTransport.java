@@ -0,0 +1,61 @@
+package com.intentfilter.wificonnect;
+
+import android.annotation.TargetApi;
+import android.net.Network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLConnection;
+
+import static android.os.Build.VERSION_CODES.LOLLIPOP;
+
+/**
+ * How probes reach the network. {@link #forNetwork(Network)} sends them over a specific network, {@link #DEFAULT}
+ * over the process default network, which also lets probes run against a local server off-device.
+ */
+abstract class ProbeTransport {
+    static final ProbeTransport DEFAULT = new ProbeTransport() {
+        @Override
+        URLConnection openConnection(URL url) throws IOException {
+            return url.openConnection();
+        }
+
+        @Override
+        Socket createSocket() {
+            return new Socket();
+        }
+
+        @Override
+        InetAddress resolve(String host) throws IOException {
+            return InetAddress.getByName(host);
+        }
+    };
+
+    abstract URLConnection openConnection(URL url) throws IOException;
+
+    abstract Socket createSocket() throws IOException;
+
+    abstract InetAddress resolve(String host) throws IOException;
+
+    @TargetApi(LOLLIPOP)
+    static ProbeTransport forNetwork(final Network network) {
+        return new ProbeTransport() {
+            @Override
+            URLConnection openConnection(URL url) throws IOException {
+                return network.openConnection(url);
+            }
+
+            @Override
+            Socket createSocket() throws IOException {
+                return network.getSocketFactory().createSocket();
+            }
+
+            @Override
+            InetAddress resolve(String host) throws IOException {
+                return network.getAllByName(host)[0];
+            }
+        };
+    }
+}
@@ -0,0 +1,43 @@
+package com.intentfilter.wificonnect;
+
+public class ProvisioningResult {
+    private final int added;
+    private final int updated;
+    private final int unchanged;
+    private final int failed;
+    private final boolean prioritiesCompacted;
+
+    ProvisioningResult(int added, int updated, int unchanged, int failed, boolean prioritiesCompacted) {
+        this.added = added;
+        this.updated = updated;
+        this.unchanged = unchanged;
+        this.failed = failed;
+        this.prioritiesCompacted = prioritiesCompacted;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public boolean arePrioritiesCompacted() {
+        return prioritiesCompacted;
+    }
+
+    @Override
+    public String toString() {
+        return "ProvisioningResult{added=" + added + ", updated=" + updated + ", unchanged=" + unchanged
+                + ", failed=" + failed + ", prioritiesCompacted=" + prioritiesCompacted + "}";
+    }
+}
@@ -0,0 +1,116 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class SSIDMatcher {
+    private final Set<WifiSSID> wantedSSIDs;
+    private final SSIDPatternTrie patterns;
+
+    SSIDMatcher(Collection<String> SSIDs) {
+        wantedSSIDs = new HashSet<>(SSIDs.size() * 2);
+        for (String SSID : SSIDs) {
+            if (SSID != null) {
+                wantedSSIDs.add(WifiSSID.of(SSID));
+            }
+        }
+        patterns = null;
+    }
+
+    private SSIDMatcher(SSIDPatternTrie patterns) {
+        this.wantedSSIDs = Collections.emptySet();
+        this.patterns = patterns;
+    }
+
+    static SSIDMatcher compile(Collection<SSIDPattern> patterns) {
+        return new SSIDMatcher(new SSIDPatternTrie(patterns));
+    }
+
+    boolean matches(String SSID) {
+        if (SSID == null) {
+            return false;
+        }
+        return patterns != null ? patterns.matches(SSID) : wantedSSIDs.contains(WifiSSID.of(SSID));
+    }
+
+    private boolean matches(WifiSSID key, String SSID) {
+        return patterns != null ? patterns.matches(SSID) : wantedSSIDs.contains(key);
+    }
+
+    ScanResult findStrongest(List<ScanResult> scanResults) {
+        ScanResult strongest = null;
+        for (int i = 0, size = scanResults.size(); i < size; i++) {
+            ScanResult scanResult = scanResults.get(i);
+            if ((strongest == null || scanResult.level > strongest.level) && matches(scanResult.SSID)) {
+                strongest = scanResult;
+            }
+        }
+        return strongest;
+    }
+
+    /**
+     * Keeps the best AP per wanted SSID and returns the {@code limit} best of them, scored by the scorer or by
+     * level when it's null. Ties go to the one seen first in the scan results.
+     */
+    List<ScanResult> findBest(List<ScanResult> scanResults, int limit, SignalScorer scorer) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        double[] scores = new double[scanResults.size()];
+        Map<WifiSSID, Integer> bestPerSSID = new HashMap<>();
+        for (int i = 0, size = scanResults.size(); i < size; i++) {
+            ScanResult scanResult = scanResults.get(i);
+            WifiSSID key = WifiSSID.of(scanResult.SSID);
+            if (key == null || !matches(key, scanResult.SSID)) {
+                continue;
+            }
+            scores[i] = scorer != null ? scorer.score(scanResult) : scanResult.level;
+            Integer current = bestPerSSID.get(key);
+            if (current == null || scores[i] > scores[current]) {
+                bestPerSSID.put(key, i);
+            }
+        }
+
+        return selectTop(scanResults, scores, bestPerSSID.values(), limit);
+    }
+
+    private List<ScanResult> selectTop(List<ScanResult> scanResults, double[] scores, Collection<Integer> candidates,
+                                       int limit) {
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        int[] top = new int[Math.min(limit, candidates.size())];
+        int count = 0;
+        for (int candidate : candidates) {
+            if (count == top.length && !isBetter(scores, candidate, top[count - 1])) {
+                continue;
+            }
+            int position = count < top.length ? count++ : count - 1;
+            while (position > 0 && isBetter(scores, candidate, top[position - 1])) {
+                top[position] = top[position - 1];
+                position--;
+            }
+            top[position] = candidate;
+        }
+
+        List<ScanResult> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(scanResults.get(top[i]));
+        }
+        return result;
+    }
+
+    private boolean isBetter(double[] scores, int index, int otherIndex) {
+        return scores[index] > scores[otherIndex] || (scores[index] == scores[otherIndex] && index < otherIndex);
+    }
+}
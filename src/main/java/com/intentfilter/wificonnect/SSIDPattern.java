@@ -0,0 +1,46 @@
+package com.intentfilter.wificonnect;
+
+public final class SSIDPattern {
+    public enum Type {
+        EXACT, PREFIX, WILDCARD
+    }
+
+    private final Type type;
+    private final String pattern;
+
+    private SSIDPattern(Type type, String pattern) {
+        if (pattern == null) {
+            throw new IllegalArgumentException("SSID pattern can't be null");
+        }
+        this.type = type;
+        this.pattern = pattern;
+    }
+
+    public static SSIDPattern exact(String SSID) {
+        return new SSIDPattern(Type.EXACT, SSID);
+    }
+
+    public static SSIDPattern prefix(String prefix) {
+        return new SSIDPattern(Type.PREFIX, prefix);
+    }
+
+    /**
+     * {@code *} matches any run of characters and {@code ?} any single character, e.g. {@code STORE-????-*}.
+     */
+    public static SSIDPattern wildcard(String pattern) {
+        return new SSIDPattern(Type.WILDCARD, pattern);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + pattern;
+    }
+}
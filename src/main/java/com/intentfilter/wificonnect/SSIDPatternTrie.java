@@ -0,0 +1,136 @@
+package com.intentfilter.wificonnect;
+
+import com.intentfilter.wificonnect.helpers.StringUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All patterns compiled into one trie, walked once per SSID. Exact and prefix patterns keep a single path
+ * active, so matching costs one step per character however many patterns there are. Wildcards add a path
+ * per {@code *} that can still match.
+ */
+class SSIDPatternTrie {
+    private final Node root = new Node(false);
+
+    SSIDPatternTrie(Collection<SSIDPattern> patterns) {
+        for (SSIDPattern pattern : patterns) {
+            add(pattern);
+        }
+    }
+
+    private void add(SSIDPattern pattern) {
+        String text = StringUtil.trimQuotes(pattern.getPattern());
+        boolean wildcard = pattern.getType() == SSIDPattern.Type.WILDCARD;
+        Node node = root;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (wildcard && c == '*') {
+                node = node.starChild();
+            } else if (wildcard && c == '?') {
+                node = node.anyChild();
+            } else {
+                node = node.child(c);
+            }
+        }
+        if (pattern.getType() == SSIDPattern.Type.PREFIX) {
+            node = node.starChild();
+        }
+        node.accepts = true;
+    }
+
+    boolean matches(String SSID) {
+        if (SSID == null) {
+            return false;
+        }
+        int end = StringUtil.quotedEnd(SSID);
+        List<Node> active = new ArrayList<>(4);
+        List<Node> next = new ArrayList<>(4);
+        addWithClosure(active, root);
+
+        for (int i = StringUtil.quotedStart(SSID); i < end && !active.isEmpty(); i++) {
+            char c = SSID.charAt(i);
+            for (int j = 0, size = active.size(); j < size; j++) {
+                Node node = active.get(j);
+                if (node.loops) {
+                    if (node.accepts) {
+                        // A trailing * matches whatever is left
+                        return true;
+                    }
+                    addWithClosure(next, node);
+                }
+                Node child = node.children != null ? node.children.get(c) : null;
+                if (child != null) {
+                    addWithClosure(next, child);
+                }
+                if (node.any != null) {
+                    addWithClosure(next, node.any);
+                }
+            }
+            List<Node> swap = active;
+            active = next;
+            next = swap;
+            next.clear();
+        }
+
+        for (int j = 0, size = active.size(); j < size; j++) {
+            if (active.get(j).accepts) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A * may match nothing, so reaching a node also reaches the * following it
+    private static void addWithClosure(List<Node> nodes, Node node) {
+        while (node != null && !nodes.contains(node)) {
+            nodes.add(node);
+            node = node.star;
+        }
+    }
+
+    private static class Node {
+        private final boolean loops;
+        private Map<Character, Node> children;
+        private Node star;
+        private Node any;
+        private boolean accepts;
+
+        private Node(boolean loops) {
+            this.loops = loops;
+        }
+
+        private Node child(char c) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            Node child = children.get(c);
+            if (child == null) {
+                child = new Node(false);
+                children.put(c, child);
+            }
+            return child;
+        }
+
+        private Node starChild() {
+            if (loops) {
+                // ** is the same as *
+                return this;
+            }
+            if (star == null) {
+                star = new Node(true);
+            }
+            return star;
+        }
+
+        private Node anyChild() {
+            if (any == null) {
+                any = new Node(false);
+            }
+            return any;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+
+import com.intentfilter.wificonnect.helpers.Logger;
+
+import java.util.Collections;
+import java.util.List;
+
+class ScanCoordinator {
+    // Foreground apps are allowed 4 scans every 2 minutes starting from Android P
+    static final int DEFAULT_SCAN_BUDGET = 4;
+    static final long DEFAULT_SCAN_BUDGET_PERIOD_MILLIS = 2 * 60 * 1000;
+
+    private final WifiBackend backend;
+    private final Clock clock;
+    private final Logger logger;
+    private int budgetCapacity = DEFAULT_SCAN_BUDGET;
+    private long refillIntervalMillis = DEFAULT_SCAN_BUDGET_PERIOD_MILLIS / DEFAULT_SCAN_BUDGET;
+    private double tokens = DEFAULT_SCAN_BUDGET;
+    private long lastRefillAt;
+    private boolean scanInFlight;
+    private long scanRequestedAt;
+    private List<ScanResult> lastResults = Collections.emptyList();
+
+    ScanCoordinator(WifiBackend backend) {
+        this.backend = backend;
+        this.clock = backend.getClock();
+        this.lastRefillAt = clock.elapsedRealtime();
+        this.logger = Logger.loggerFor(ScanCoordinator.class);
+    }
+
+    synchronized void setBudget(int scans, long periodMillis) {
+        if (scans < 1 || periodMillis <= 0) {
+            throw new IllegalArgumentException("Scan budget needs at least one scan over a positive period");
+        }
+        refill();
+        this.budgetCapacity = scans;
+        this.refillIntervalMillis = Math.max(1, periodMillis / scans);
+        this.tokens = Math.min(tokens, scans);
+    }
+
+    /**
+     * Starts a scan unless one started within {@code maxWaitMillis} is still waiting for results. Returns the
+     * last good results when the scan budget is used up or the platform refuses to scan, null otherwise or when
+     * there are no results yet, in which case the next scan results broadcast has to be waited for. Called on the
+     * WiFi command worker thread, the platform calls are made out of the lock.
+     */
+    List<ScanResult> requestScan(long maxWaitMillis) {
+        boolean withinBudget;
+        synchronized (this) {
+            long now = clock.elapsedRealtime();
+            if (scanInFlight && now - scanRequestedAt < maxWaitMillis) {
+                logger.d("Scan already in flight, waiting for its results");
+                return null;
+            }
+
+            refill();
+            withinBudget = tokens >= 1;
+            if (withinBudget) {
+                tokens--;
+                scanInFlight = true;
+                scanRequestedAt = now;
+            }
+        }
+
+        if (!withinBudget) {
+            logger.i("Scan budget used up, serving last scan results");
+            return lastGoodResults();
+        }
+        if (!backend.startScan()) {
+            synchronized (this) {
+                tokens = Math.min(budgetCapacity, tokens + 1);
+                scanInFlight = false;
+            }
+            logger.i("Platform refused to scan, serving last scan results");
+            return lastGoodResults();
+        }
+        return null;
+    }
+
+    synchronized void onScanResults(List<ScanResult> scanResults) {
+        scanInFlight = false;
+        if (!scanResults.isEmpty()) {
+            lastResults = scanResults;
+        }
+    }
+
+    // Results the platform still holds from scans of other apps, or from before this process started
+    private List<ScanResult> lastGoodResults() {
+        List<ScanResult> results;
+        synchronized (this) {
+            results = lastResults;
+        }
+        if (results.isEmpty()) {
+            List<ScanResult> platformResults = backend.getScanResults();
+            if (platformResults != null && !platformResults.isEmpty()) {
+                results = Collections.unmodifiableList(platformResults);
+                synchronized (this) {
+                    if (lastResults.isEmpty()) {
+                        lastResults = results;
+                    }
+                }
+            }
+        }
+        if (results.isEmpty()) {
+            logger.d("No scan results to serve yet, waiting for the next broadcast");
+            return null;
+        }
+        return results;
+    }
+
+    private void refill() {
+        long now = clock.elapsedRealtime();
+        tokens = Math.min(budgetCapacity, tokens + (double) (now - lastRefillAt) / refillIntervalMillis);
+        lastRefillAt = now;
+    }
+}
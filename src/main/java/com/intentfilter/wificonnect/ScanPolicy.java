@@ -0,0 +1,63 @@
+package com.intentfilter.wificonnect;
+
+public class ScanPolicy {
+    private static final long NO_DELAY = 0;
+    private static final long DEFAULT_RESULTS_TIMEOUT_MILLIS = 4000;
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 8000;
+    private static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+    private final long initialDelayMillis;
+    private final long resultsTimeoutMillis;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int maxAttempts;
+
+    public ScanPolicy(long initialDelayMillis, long resultsTimeoutMillis, long initialBackoffMillis,
+                      long maxBackoffMillis, int maxAttempts) {
+        if (initialDelayMillis < 0 || resultsTimeoutMillis <= 0 || initialBackoffMillis < 0
+                || maxBackoffMillis < initialBackoffMillis || maxAttempts < 1) {
+            throw new IllegalArgumentException("Invalid scan policy");
+        }
+        this.initialDelayMillis = initialDelayMillis;
+        this.resultsTimeoutMillis = resultsTimeoutMillis;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public static ScanPolicy defaultPolicy() {
+        return new ScanPolicy(NO_DELAY, DEFAULT_RESULTS_TIMEOUT_MILLIS, DEFAULT_INITIAL_BACKOFF_MILLIS,
+                DEFAULT_MAX_BACKOFF_MILLIS, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public long getInitialDelayMillis() {
+        return initialDelayMillis;
+    }
+
+    public long getResultsTimeoutMillis() {
+        return resultsTimeoutMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Delay before the given retry (1 based), doubling from the initial backoff up to the max backoff.
+     */
+    public long getBackoffMillis(int retry) {
+        long backoff = initialBackoffMillis;
+        for (int i = 1; i < retry && backoff < maxBackoffMillis; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, maxBackoffMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanPolicy{initialDelay=" + initialDelayMillis + ", resultsTimeout=" + resultsTimeoutMillis
+                + ", initialBackoff=" + initialBackoffMillis + ", maxBackoff=" + maxBackoffMillis
+                + ", maxAttempts=" + maxAttempts + "}";
+    }
+}
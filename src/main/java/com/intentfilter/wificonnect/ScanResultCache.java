@@ -0,0 +1,88 @@
+package com.intentfilter.wificonnect;
+
+import android.annotation.TargetApi;
+import android.net.wifi.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.JELLY_BEAN_MR1;
+
+class ScanResultCache {
+    static final long NO_CACHE = 0;
+    private static final long RETENTION_MILLIS = 5 * 60 * 1000;
+
+    private final Map<String, CachedResult> resultsByBSSID = new HashMap<>();
+    private final Clock clock;
+
+    ScanResultCache(Clock clock) {
+        this.clock = clock;
+    }
+
+    synchronized void update(List<ScanResult> scanResults) {
+        if (scanResults == null) {
+            return;
+        }
+
+        long now = clock.elapsedRealtime();
+        for (int i = 0, size = scanResults.size(); i < size; i++) {
+            ScanResult scanResult = scanResults.get(i);
+            if (scanResult.BSSID == null) {
+                continue;
+            }
+            CachedResult cached = resultsByBSSID.get(scanResult.BSSID);
+            if (cached == null || seenAt(scanResult, now) >= cached.seenAt) {
+                resultsByBSSID.put(scanResult.BSSID, new CachedResult(scanResult, seenAt(scanResult, now)));
+            }
+        }
+        evictOlderThan(now - RETENTION_MILLIS);
+    }
+
+    synchronized List<ScanResult> getFreshResults(long maxAgeMillis) {
+        if (maxAgeMillis <= NO_CACHE || resultsByBSSID.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long oldestAllowed = clock.elapsedRealtime() - maxAgeMillis;
+        List<ScanResult> freshResults = new ArrayList<>(resultsByBSSID.size());
+        for (CachedResult cached : resultsByBSSID.values()) {
+            if (cached.seenAt >= oldestAllowed) {
+                freshResults.add(cached.scanResult);
+            }
+        }
+        return freshResults;
+    }
+
+    private void evictOlderThan(long oldestAllowed) {
+        Iterator<CachedResult> iterator = resultsByBSSID.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().seenAt < oldestAllowed) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @TargetApi(JELLY_BEAN_MR1)
+    private static long seenAt(ScanResult scanResult, long receivedAt) {
+        // ScanResult.timestamp is in microseconds since boot, only available from API 17
+        if (SDK_INT >= JELLY_BEAN_MR1 && scanResult.timestamp > 0) {
+            return Math.min(scanResult.timestamp / 1000, receivedAt);
+        }
+        return receivedAt;
+    }
+
+    private static class CachedResult {
+        private final ScanResult scanResult;
+        private final long seenAt;
+
+        private CachedResult(ScanResult scanResult, long seenAt) {
+            this.scanResult = scanResult;
+            this.seenAt = seenAt;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+
+import java.util.List;
+
+public interface ScanResultsDeltaListener {
+    /**
+     * Called only when something changed since the previous call. Access points are keyed by BSSID, an AP is
+     * reported as changed when its SSID or frequency changed or its level moved by at least the RSSI threshold.
+     */
+    void onScanResultsChanged(List<ScanResult> added, List<ScanResult> removed, List<ScanResult> changed);
+}
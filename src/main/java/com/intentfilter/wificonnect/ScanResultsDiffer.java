@@ -0,0 +1,100 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+
+import com.intentfilter.wificonnect.helpers.StringUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+class ScanResultsDiffer {
+    static final int DEFAULT_RSSI_THRESHOLD = 5;
+
+    private final ScanResultsDeltaListener listener;
+    private final int rssiThreshold;
+    private final Map<String, ReportedResult> reportedByBSSID = new HashMap<>();
+    private int generation;
+
+    ScanResultsDiffer(ScanResultsDeltaListener listener, int rssiThreshold) {
+        this.listener = listener;
+        this.rssiThreshold = rssiThreshold;
+    }
+
+    ScanResultsDeltaListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Diffs against the results last reported and calls the listener if anything changed.
+     */
+    synchronized void onScanResults(List<ScanResult> scanResults) {
+        int currentGeneration = ++generation;
+        List<ScanResult> added = null;
+        List<ScanResult> changed = null;
+        List<ScanResult> removed = null;
+
+        for (int i = 0, size = scanResults.size(); i < size; i++) {
+            ScanResult scanResult = scanResults.get(i);
+            if (scanResult.BSSID == null) {
+                continue;
+            }
+            ReportedResult reported = reportedByBSSID.get(scanResult.BSSID);
+            if (reported == null) {
+                reportedByBSSID.put(scanResult.BSSID, new ReportedResult(scanResult, currentGeneration));
+                added = append(added, scanResult);
+            } else if (reported.generation != currentGeneration) {
+                reported.generation = currentGeneration;
+                if (hasChanged(reported.scanResult, scanResult)) {
+                    // Compare the next scan with what was reported, so slow drifts are reported too
+                    reported.scanResult = scanResult;
+                    changed = append(changed, scanResult);
+                }
+            }
+        }
+
+        Iterator<ReportedResult> iterator = reportedByBSSID.values().iterator();
+        while (iterator.hasNext()) {
+            ReportedResult reported = iterator.next();
+            if (reported.generation != currentGeneration) {
+                iterator.remove();
+                removed = append(removed, reported.scanResult);
+            }
+        }
+
+        if (added != null || removed != null || changed != null) {
+            listener.onScanResultsChanged(unmodifiable(added), unmodifiable(removed), unmodifiable(changed));
+        }
+    }
+
+    private boolean hasChanged(ScanResult reported, ScanResult scanResult) {
+        return Math.abs(scanResult.level - reported.level) >= rssiThreshold
+                || reported.frequency != scanResult.frequency
+                || !StringUtil.equalsIgnoringQuotes(reported.SSID, scanResult.SSID);
+    }
+
+    private static List<ScanResult> append(List<ScanResult> list, ScanResult scanResult) {
+        if (list == null) {
+            list = new ArrayList<>();
+        }
+        list.add(scanResult);
+        return list;
+    }
+
+    private static List<ScanResult> unmodifiable(List<ScanResult> list) {
+        return list != null ? Collections.unmodifiableList(list) : Collections.<ScanResult>emptyList();
+    }
+
+    private static class ReportedResult {
+        private ScanResult scanResult;
+        private int generation;
+
+        private ReportedResult(ScanResult scanResult, int generation) {
+            this.scanResult = scanResult;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.intentfilter.wificonnect;
+
+import com.intentfilter.wificonnect.helpers.Logger;
+
+class ScanScheduler {
+    private static final long NOT_SET = ConnectionMetricsRecorder.NOT_SET;
+
+    private final WifiUtil wifiUtil;
+    private final Scheduler handler;
+    private final Clock clock;
+    private final Logger logger;
+    private volatile ScanPolicy policy;
+    private ScanResultsListener waiter;
+    private ScanTimeoutListener timeoutListener;
+    private int attempts;
+    private long firstScanRequestedAt = NOT_SET;
+    private long resultsReceivedAt = NOT_SET;
+    private boolean waitingForResults;
+
+    private final Runnable scanRunnable = new Runnable() {
+        @Override
+        public void run() {
+            requestScan();
+        }
+    };
+
+    private final Runnable deadlineRunnable = new Runnable() {
+        @Override
+        public void run() {
+            onResultsDeadlineExpired();
+        }
+    };
+
+    ScanScheduler(WifiUtil wifiUtil) {
+        this(wifiUtil, wifiUtil.getBackend().getMainScheduler(), ScanPolicy.defaultPolicy());
+    }
+
+    ScanScheduler(WifiUtil wifiUtil, Scheduler handler, ScanPolicy policy) {
+        this.wifiUtil = wifiUtil;
+        this.handler = handler;
+        this.clock = wifiUtil.getBackend().getClock();
+        this.policy = policy;
+        this.logger = Logger.loggerFor(ScanScheduler.class);
+    }
+
+    void setPolicy(ScanPolicy policy) {
+        this.policy = policy;
+    }
+
+    ScanPolicy getPolicy() {
+        return policy;
+    }
+
+    void start(ScanResultsListener waiter, ScanTimeoutListener timeoutListener) {
+        long initialDelayMillis = policy.getInitialDelayMillis();
+        synchronized (this) {
+            reset();
+            this.waiter = waiter;
+            this.timeoutListener = timeoutListener;
+            waitingForResults = true;
+            if (initialDelayMillis > 0) {
+                handler.postDelayed(scanRunnable, initialDelayMillis);
+                return;
+            }
+        }
+        requestScan();
+    }
+
+    synchronized void onScanResultsReceived() {
+        if (!waitingForResults) {
+            return;
+        }
+        waitingForResults = false;
+        resultsReceivedAt = clock.elapsedRealtime();
+        handler.removeCallbacks(scanRunnable);
+        handler.removeCallbacks(deadlineRunnable);
+        logger.d("Scan results received after %d attempt(s) in %dms", attempts, getTimeToResultsMillis());
+    }
+
+    synchronized void reset() {
+        cancel();
+        attempts = 0;
+        firstScanRequestedAt = NOT_SET;
+        resultsReceivedAt = NOT_SET;
+    }
+
+    synchronized void cancel() {
+        waitingForResults = false;
+        waiter = null;
+        timeoutListener = null;
+        handler.removeCallbacks(scanRunnable);
+        handler.removeCallbacks(deadlineRunnable);
+    }
+
+    synchronized int getAttempts() {
+        return attempts;
+    }
+
+    synchronized long getFirstScanRequestedAt() {
+        return firstScanRequestedAt;
+    }
+
+    synchronized long getResultsReceivedAt() {
+        return resultsReceivedAt;
+    }
+
+    synchronized long getTimeToResultsMillis() {
+        if (firstScanRequestedAt == NOT_SET || resultsReceivedAt == NOT_SET) {
+            return NOT_SET;
+        }
+        return resultsReceivedAt - firstScanRequestedAt;
+    }
+
+    // Calls out of the lock, results may be delivered synchronously on this thread
+    private void requestScan() {
+        ScanPolicy policy = this.policy;
+        ScanResultsListener waiter;
+        synchronized (this) {
+            if (!waitingForResults) {
+                return;
+            }
+            attempts++;
+            if (firstScanRequestedAt == NOT_SET) {
+                firstScanRequestedAt = clock.elapsedRealtime();
+            }
+            logger.d("Requesting scan, attempt %d of %d", attempts, policy.getMaxAttempts());
+            handler.postDelayed(deadlineRunnable, policy.getResultsTimeoutMillis());
+            waiter = this.waiter;
+        }
+        wifiUtil.requestScan(waiter, policy.getResultsTimeoutMillis());
+    }
+
+    private void onResultsDeadlineExpired() {
+        ScanPolicy policy = this.policy;
+        ScanTimeoutListener listener;
+        int attempts;
+        synchronized (this) {
+            if (!waitingForResults) {
+                return;
+            }
+
+            if (this.attempts < policy.getMaxAttempts()) {
+                long backoff = policy.getBackoffMillis(this.attempts);
+                logger.i("No scan results within %dms, retrying in %dms", policy.getResultsTimeoutMillis(), backoff);
+                handler.postDelayed(scanRunnable, backoff);
+                return;
+            }
+
+            waitingForResults = false;
+            attempts = this.attempts;
+            listener = timeoutListener;
+            timeoutListener = null;
+        }
+        logger.e("No scan results received after %d attempts", attempts);
+        if (listener != null) {
+            listener.onScanTimedOut(attempts);
+        }
+    }
+
+    interface ScanTimeoutListener {
+        void onScanTimedOut(int attempts);
+    }
+}
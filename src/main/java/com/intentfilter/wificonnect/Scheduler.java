@@ -0,0 +1,25 @@
+package com.intentfilter.wificonnect;
+
+/**
+ * Runs tasks one at a time on a single thread, like a Handler. The library only schedules through this, so it
+ * can run on a simulated event loop off-device.
+ */
+interface Scheduler {
+    void post(Runnable task);
+
+    void postDelayed(Runnable task, long delayMillis);
+
+    /**
+     * Posts the task under a token, all tasks posted under it can be removed at once.
+     */
+    void postDelayed(Runnable task, Object token, long delayMillis);
+
+    void removeCallbacks(Runnable task);
+
+    void removeCallbacksAndMessages(Object token);
+
+    /**
+     * Stops the thread the scheduler started, if it started one.
+     */
+    void quit();
+}
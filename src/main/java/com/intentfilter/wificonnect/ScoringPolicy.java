@@ -0,0 +1,69 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ScoringPolicy {
+    private static final double DEFAULT_SMOOTHING_FACTOR = 0.3;
+    private static final int DEFAULT_HYSTERESIS_MARGIN = 5;
+    private static final int DEFAULT_FIVE_GHZ_BONUS = 5;
+
+    private final double smoothingFactor;
+    private final int hysteresisMargin;
+    private final int fiveGhzBonus;
+    private final List<ScoreFactor> scoreFactors;
+
+    public ScoringPolicy(double smoothingFactor, int hysteresisMargin, int fiveGhzBonus) {
+        this(smoothingFactor, hysteresisMargin, fiveGhzBonus, Collections.<ScoreFactor>emptyList());
+    }
+
+    /**
+     * @param smoothingFactor weight (0, 1] of the latest level in the exponentially weighted RSSI of an AP
+     * @param hysteresisMargin dB another AP must score above the previously chosen one to be preferred over it
+     * @param fiveGhzBonus dB added to the score of APs on the 5 GHz band
+     * @param scoreFactors further dB adjustments added to the score
+     */
+    public ScoringPolicy(double smoothingFactor, int hysteresisMargin, int fiveGhzBonus,
+                         List<ScoreFactor> scoreFactors) {
+        if (smoothingFactor <= 0 || smoothingFactor > 1 || hysteresisMargin < 0) {
+            throw new IllegalArgumentException("Invalid scoring policy");
+        }
+        this.smoothingFactor = smoothingFactor;
+        this.hysteresisMargin = hysteresisMargin;
+        this.fiveGhzBonus = fiveGhzBonus;
+        this.scoreFactors = Collections.unmodifiableList(new ArrayList<>(scoreFactors));
+    }
+
+    public static ScoringPolicy defaultPolicy() {
+        return new ScoringPolicy(DEFAULT_SMOOTHING_FACTOR, DEFAULT_HYSTERESIS_MARGIN, DEFAULT_FIVE_GHZ_BONUS);
+    }
+
+    public double getSmoothingFactor() {
+        return smoothingFactor;
+    }
+
+    public int getHysteresisMargin() {
+        return hysteresisMargin;
+    }
+
+    public int getFiveGhzBonus() {
+        return fiveGhzBonus;
+    }
+
+    public List<ScoreFactor> getScoreFactors() {
+        return scoreFactors;
+    }
+
+    @Override
+    public String toString() {
+        return "ScoringPolicy{smoothingFactor=" + smoothingFactor + ", hysteresisMargin=" + hysteresisMargin
+                + ", fiveGhzBonus=" + fiveGhzBonus + ", scoreFactors=" + scoreFactors.size() + "}";
+    }
+
+    public interface ScoreFactor {
+        int score(ScanResult scanResult);
+    }
+}
@@ -0,0 +1,118 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+
+import com.intentfilter.wificonnect.ScoringPolicy.ScoreFactor;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scores APs by their exponentially weighted level across scans rather than the level of a single scan, so
+ * a few dB of fluctuation doesn't make a different AP win. The AP chosen last gets the hysteresis margin.
+ */
+class SignalScorer {
+    private static final long RETENTION_MILLIS = 5 * 60 * 1000;
+    private static final Map<WifiBackend, SignalScorer> scorers = new HashMap<>();
+
+    private final Map<String, SmoothedLevel> levelsByBSSID = new HashMap<>();
+    private final Clock clock;
+    private volatile ScoringPolicy policy = ScoringPolicy.defaultPolicy();
+    private volatile String preferredBSSID;
+
+    static synchronized SignalScorer forBackend(WifiBackend backend) {
+        SignalScorer scorer = scorers.get(backend);
+        if (scorer == null) {
+            scorer = new SignalScorer(backend.getClock());
+            scorers.put(backend, scorer);
+        }
+        return scorer;
+    }
+
+    static synchronized void release(WifiBackend backend) {
+        scorers.remove(backend);
+    }
+
+    private SignalScorer(Clock clock) {
+        this.clock = clock;
+    }
+
+    void setPolicy(ScoringPolicy policy) {
+        this.policy = policy;
+    }
+
+    ScoringPolicy getPolicy() {
+        return policy;
+    }
+
+    synchronized void update(List<ScanResult> scanResults) {
+        double smoothingFactor = policy.getSmoothingFactor();
+        long now = clock.elapsedRealtime();
+        for (int i = 0, size = scanResults.size(); i < size; i++) {
+            ScanResult scanResult = scanResults.get(i);
+            if (scanResult.BSSID == null) {
+                continue;
+            }
+            SmoothedLevel smoothed = levelsByBSSID.get(scanResult.BSSID);
+            if (smoothed == null) {
+                levelsByBSSID.put(scanResult.BSSID, new SmoothedLevel(scanResult.level, now));
+            } else {
+                smoothed.level += smoothingFactor * (scanResult.level - smoothed.level);
+                smoothed.updatedAt = now;
+            }
+        }
+
+        Iterator<SmoothedLevel> iterator = levelsByBSSID.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().updatedAt > RETENTION_MILLIS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized double score(ScanResult scanResult) {
+        ScoringPolicy policy = this.policy;
+        SmoothedLevel smoothed = scanResult.BSSID != null ? levelsByBSSID.get(scanResult.BSSID) : null;
+        double score = smoothed != null ? smoothed.level : scanResult.level;
+        if (is5GHz(scanResult.frequency)) {
+            score += policy.getFiveGhzBonus();
+        }
+        if (scanResult.BSSID != null && scanResult.BSSID.equals(preferredBSSID)) {
+            score += policy.getHysteresisMargin();
+        }
+        List<ScoreFactor> scoreFactors = policy.getScoreFactors();
+        for (int i = 0, size = scoreFactors.size(); i < size; i++) {
+            score += scoreFactors.get(i).score(scanResult);
+        }
+        return score;
+    }
+
+    synchronized void setPreferredBSSID(String BSSID) {
+        this.preferredBSSID = BSSID;
+    }
+
+    /**
+     * Prefers the AP remembered from an earlier run, unless one was chosen since.
+     */
+    synchronized void setPreferredBSSIDIfUnset(String BSSID) {
+        if (preferredBSSID == null) {
+            preferredBSSID = BSSID;
+        }
+    }
+
+    private static boolean is5GHz(int frequency) {
+        return frequency >= 4900 && frequency < 5900;
+    }
+
+    private static class SmoothedLevel {
+        private double level;
+        private long updatedAt;
+
+        private SmoothedLevel(double level, long updatedAt) {
+            this.level = level;
+            this.updatedAt = updatedAt;
+        }
+    }
+}
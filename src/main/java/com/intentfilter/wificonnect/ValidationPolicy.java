@@ -0,0 +1,54 @@
+package com.intentfilter.wificonnect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ValidationPolicy {
+    private static final int DEFAULT_PROBE_TIMEOUT_MILLIS = 3000;
+    private static final long DEFAULT_CACHE_TTL_MILLIS = 10 * 60 * 1000;
+    public static final long NO_CACHE = 0;
+
+    private final List<ConnectivityProbe> probes;
+    private final int probeTimeoutMillis;
+    private final long cacheTtlMillis;
+
+    /**
+     * @param probes run in parallel, the network is validated as soon as one of them succeeds
+     * @param cacheTtlMillis how long a result is reused for the same BSSID, {@link #NO_CACHE} to always probe
+     */
+    public ValidationPolicy(List<ConnectivityProbe> probes, int probeTimeoutMillis, long cacheTtlMillis) {
+        if (probes == null || probes.isEmpty() || probeTimeoutMillis <= 0 || cacheTtlMillis < NO_CACHE) {
+            throw new IllegalArgumentException("Invalid validation policy");
+        }
+        this.probes = Collections.unmodifiableList(new ArrayList<>(probes));
+        this.probeTimeoutMillis = probeTimeoutMillis;
+        this.cacheTtlMillis = cacheTtlMillis;
+    }
+
+    public static ValidationPolicy defaultPolicy() {
+        return new ValidationPolicy(Arrays.asList(
+                ConnectivityProbe.http("http://connectivitycheck.gstatic.com/generate_204"),
+                ConnectivityProbe.http("http://clients3.google.com/generate_204")),
+                DEFAULT_PROBE_TIMEOUT_MILLIS, DEFAULT_CACHE_TTL_MILLIS);
+    }
+
+    public List<ConnectivityProbe> getProbes() {
+        return probes;
+    }
+
+    public int getProbeTimeoutMillis() {
+        return probeTimeoutMillis;
+    }
+
+    public long getCacheTtlMillis() {
+        return cacheTtlMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ValidationPolicy{probes=" + probes + ", probeTimeout=" + probeTimeoutMillis
+                + ", cacheTtl=" + cacheTtlMillis + "}";
+    }
+}
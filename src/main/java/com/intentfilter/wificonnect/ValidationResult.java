@@ -0,0 +1,5 @@
+package com.intentfilter.wificonnect;
+
+public enum ValidationResult {
+    VALIDATED, CAPTIVE_PORTAL, NO_CONNECTIVITY
+}
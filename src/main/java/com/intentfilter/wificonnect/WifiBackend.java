@@ -0,0 +1,91 @@
+package com.intentfilter.wificonnect;
+
+import android.net.Network;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiInfo;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Platform operations, events, threads and time the library depends on. {@link AndroidWifiBackend} forwards
+ * them to WifiManager, ConnectivityManager, Context and Handlers, other implementations can drive the connection
+ * flow off-device.
+ */
+interface WifiBackend {
+    boolean setWifiEnabled(boolean enabled);
+
+    boolean isWifiEnabled();
+
+    boolean startScan();
+
+    List<ScanResult> getScanResults();
+
+    int addNetwork(WifiConfiguration configuration);
+
+    int updateNetwork(WifiConfiguration configuration);
+
+    boolean enableNetwork(int networkId, boolean disableOthers);
+
+    List<WifiConfiguration> getConfiguredNetworks();
+
+    WifiInfo getConnectionInfo();
+
+    boolean disconnect();
+
+    boolean isActiveNetworkWifi();
+
+    void bindProcessToNetwork(Network network);
+
+    /**
+     * @return the network the process is bound to, null when not bound or below Lollipop
+     */
+    Network getBoundNetworkForProcess();
+
+    boolean isWifiNetwork(Network network);
+
+    void reportNetworkConnectivity(Network network);
+
+    /**
+     * Delivers events of the type until the listener is unregistered. WiFi and network state events start with
+     * the current state, marked as initial sticky broadcast.
+     */
+    void registerEventListener(WifiEvent.Type type, EventListener listener);
+
+    void unregisterEventListener(EventListener listener);
+
+    /**
+     * Reports WiFi networks becoming available or lost until the listener is unregistered.
+     */
+    void registerNetworkListener(NetworkListener listener);
+
+    void unregisterNetworkListener(NetworkListener listener);
+
+    File getFilesDir();
+
+    Clock getClock();
+
+    Scheduler getMainScheduler();
+
+    Scheduler newBackgroundScheduler(String name);
+
+    /**
+     * Runs tasks one at a time in submission order, rejecting them once {@code queueCapacity} are waiting.
+     */
+    Executor newSerialExecutor(String name, int queueCapacity);
+
+    interface EventListener {
+        void onEvent(WifiEvent event);
+    }
+
+    interface NetworkListener {
+        /**
+         * @param SSID of the network as reported by the platform, null when unknown
+         */
+        void onNetworkAvailable(Network network, String SSID);
+
+        void onNetworkLost(Network network);
+    }
+}
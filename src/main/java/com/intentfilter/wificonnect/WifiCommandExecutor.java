@@ -0,0 +1,175 @@
+package com.intentfilter.wificonnect;
+
+import com.intentfilter.wificonnect.helpers.Logger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Runs blocking WifiManager/ConnectivityManager calls one at a time, in submission order, on a worker thread
+ * shared by everyone using the same backend. Results are posted to the caller's Scheduler.
+ */
+class WifiCommandExecutor {
+    static final int QUEUE_CAPACITY = 32;
+    private static final Map<WifiBackend, WifiCommandExecutor> executors = new HashMap<>();
+
+    private final Executor executor;
+    private final Set<Task<?>> pendingTasks = Collections.newSetFromMap(new ConcurrentHashMap<Task<?>, Boolean>());
+    private final Logger logger;
+
+    private WifiCommandExecutor(WifiBackend backend) {
+        this.logger = Logger.loggerFor(WifiCommandExecutor.class);
+        this.executor = backend.newSerialExecutor(WifiCommandExecutor.class.getSimpleName(), QUEUE_CAPACITY);
+    }
+
+    static synchronized WifiCommandExecutor forBackend(WifiBackend backend) {
+        WifiCommandExecutor executor = executors.get(backend);
+        if (executor == null) {
+            executor = new WifiCommandExecutor(backend);
+            executors.put(backend, executor);
+        }
+        return executor;
+    }
+
+    /**
+     * Cancels the commands of the backend's executor and lets its worker thread finish, the next
+     * {@link #forBackend(WifiBackend)} starts a new one.
+     */
+    static synchronized void release(WifiBackend backend) {
+        WifiCommandExecutor executor = executors.remove(backend);
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Queues the command, its result, or the exception it threw, is posted to {@code resultScheduler} unless the
+     * token is cancelled first. Returns false when the queue is full and the command was dropped.
+     */
+    <T> boolean execute(Object token, Command<T> command, Scheduler resultScheduler, Callback<T> callback) {
+        Task<T> task = new Task<>(token, command, resultScheduler, callback);
+        pendingTasks.add(task);
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendingTasks.remove(task);
+            logger.e("WiFi command queue is full, dropping command: %s", e.getMessage());
+            return false;
+        }
+    }
+
+    boolean execute(Command<?> command) {
+        return execute(null, command, null, null);
+    }
+
+    /**
+     * Drops queued commands submitted with the token and suppresses results of those already running.
+     */
+    void cancel(Object token) {
+        if (token == null) {
+            return;
+        }
+        int cancelled = 0;
+        for (Iterator<Task<?>> iterator = pendingTasks.iterator(); iterator.hasNext(); ) {
+            Task<?> task = iterator.next();
+            if (task.token == token) {
+                task.cancelled = true;
+                if (executor instanceof ThreadPoolExecutor) {
+                    ((ThreadPoolExecutor) executor).remove(task);
+                }
+                iterator.remove();
+                cancelled++;
+            }
+        }
+        if (cancelled > 0) {
+            logger.d("Cancelled %d stale WiFi commands", cancelled);
+        }
+    }
+
+    private void shutdown() {
+        for (Task<?> task : pendingTasks) {
+            task.cancelled = true;
+        }
+        pendingTasks.clear();
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    interface Command<T> {
+        T execute();
+    }
+
+    interface Callback<T> {
+        void onResult(T result);
+
+        void onError(RuntimeException error);
+    }
+
+    private class Task<T> implements Runnable {
+        private final Object token;
+        private final Command<T> command;
+        private final Scheduler resultScheduler;
+        private final Callback<T> callback;
+        private volatile boolean cancelled;
+
+        Task(Object token, Command<T> command, Scheduler resultScheduler, Callback<T> callback) {
+            this.token = token;
+            this.command = command;
+            this.resultScheduler = resultScheduler;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            final T result;
+            try {
+                result = command.execute();
+            } catch (final RuntimeException e) {
+                // Platform services throw when they die under us, keep the worker alive for the next command
+                logger.e("WiFi command failed", e);
+                deliver(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onError(e);
+                    }
+                });
+                return;
+            }
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onResult(result);
+                }
+            });
+        }
+
+        private void deliver(final Runnable delivery) {
+            if (callback == null) {
+                pendingTasks.remove(this);
+                return;
+            }
+            resultScheduler.post(new Runnable() {
+                @Override
+                public void run() {
+                    pendingTasks.remove(Task.this);
+                    if (!cancelled) {
+                        delivery.run();
+                    }
+                }
+            });
+        }
+    }
+}
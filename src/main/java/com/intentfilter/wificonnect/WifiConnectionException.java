@@ -0,0 +1,11 @@
+package com.intentfilter.wificonnect;
+
+/**
+ * Failure of a connect operation, with the same reason {@link WifiConnectionManager.ConnectionStateChangedListener}
+ * receives.
+ */
+public class WifiConnectionException extends Exception {
+    public WifiConnectionException(String reason) {
+        super(reason);
+    }
+}
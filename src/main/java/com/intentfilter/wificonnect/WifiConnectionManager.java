@@ -3,43 +3,105 @@ package com.intentfilter.wificonnect;
 import android.content.Context;
 import android.net.Network;
 import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.os.Build;
 import android.os.Handler;
 
+import com.intentfilter.wificonnect.ScanScheduler.ScanTimeoutListener;
+import com.intentfilter.wificonnect.WifiCommandExecutor.Callback;
+import com.intentfilter.wificonnect.WifiCommandExecutor.Command;
 import com.intentfilter.wificonnect.WifiUtil.NetworkStateChangeListener;
 import com.intentfilter.wificonnect.WifiUtil.WifiStateChangeListener;
 import com.intentfilter.wificonnect.helpers.Logger;
+import com.intentfilter.wificonnect.helpers.StringUtil;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.lang.String.format;
 
 public class WifiConnectionManager
-        implements NetworkStateChangeListener, WifiStateChangeListener, ScanResultsListener {
+        implements NetworkStateChangeListener, WifiStateChangeListener, ScanResultsListener, ScanTimeoutListener {
+    static final long FAST_RECONNECT_MAX_SCAN_AGE_MILLIS = 30 * 1000;
 
-    private static boolean shouldBindToNetwork;
+    private static volatile boolean shouldBindToNetwork;
+    private static final ConnectionMetrics connectionMetrics = new ConnectionMetrics();
+    private static final ConnectionEventLog connectionEventLog = new ConnectionEventLog(Clock.SYSTEM);
+    private static final ListenerDiagnostics listenerDiagnostics = new ListenerDiagnostics();
     private final WifiUtil wifiUtil;
-    private WifiHelper wifiHelper;
-    private AdvancedConnectionStateListener advancedStateListener;
-    private List<String> SSIDs;
-    private ConnectionStateChangedListener connectionStateListener;
+    private final WifiHelper wifiHelper;
+    private final ScanScheduler scanScheduler;
+    private final ConnectionMetricsRecorder metricsRecorder;
+    private final AtomicReference<ConnectionRequest> currentRequest = new AtomicReference<>();
+    private final WifiCommandExecutor commandExecutor;
+    private final NetworkHistoryStore networkHistory;
+    private final SignalScorer signalScorer;
+    private final ConnectivityValidator validator;
+    private final Clock clock;
+    private final Scheduler timeoutScheduler;
+    private volatile Scheduler callbackScheduler;
+    private volatile AdvancedConnectionStateListener advancedStateListener;
+    private volatile ConnectionPolicy connectionPolicy = ConnectionPolicy.defaultPolicy();
+    private volatile boolean fastReconnectEnabled;
     private Logger LOGGER = Logger.loggerFor(WifiManager.class);
-    private Lock reentrantLock;
-    private String availableSSID;
 
     public WifiConnectionManager(Context context) {
-        this(new WifiUtil(context.getApplicationContext()),
-                new WifiHelper(context.getApplicationContext()), new ReentrantLock());
+        this(AndroidWifiBackend.forContext(context));
     }
 
-    WifiConnectionManager(WifiUtil wifiUtil, WifiHelper wifiHelper, ReentrantLock reentrantLock) {
+    WifiConnectionManager(WifiBackend backend) {
+        this(new WifiUtil(backend), new WifiHelper(backend), WifiCommandExecutor.forBackend(backend),
+                NetworkHistoryStore.forBackend(backend), SignalScorer.forBackend(backend));
+    }
+
+    WifiConnectionManager(WifiUtil wifiUtil, WifiHelper wifiHelper, WifiCommandExecutor commandExecutor,
+                          NetworkHistoryStore networkHistory, SignalScorer signalScorer) {
+        this(wifiUtil, wifiHelper, new ScanScheduler(wifiUtil), commandExecutor, networkHistory, signalScorer);
+    }
+
+    WifiConnectionManager(WifiUtil wifiUtil, WifiHelper wifiHelper, ScanScheduler scanScheduler,
+                          WifiCommandExecutor commandExecutor, NetworkHistoryStore networkHistory,
+                          SignalScorer signalScorer) {
         this.wifiUtil = wifiUtil;
         this.wifiHelper = wifiHelper;
-        this.reentrantLock = reentrantLock;
+        this.scanScheduler = scanScheduler;
+        this.commandExecutor = commandExecutor;
+        this.networkHistory = networkHistory;
+        this.signalScorer = signalScorer;
+        this.validator = ConnectivityValidator.forBackend(wifiUtil.getBackend());
+        this.clock = wifiUtil.getBackend().getClock();
+        this.timeoutScheduler = wifiUtil.getBackend().getMainScheduler();
+        this.callbackScheduler = timeoutScheduler;
+        this.metricsRecorder = new ConnectionMetricsRecorder(connectionMetrics, connectionEventLog, clock);
+    }
+
+    /**
+     * Unregisters the receivers and network callback and stops the worker threads the library keeps for the
+     * application of the context, pending connection history is written first. Abort running connections before,
+     * managers created earlier must not be used afterwards, new ones start from scratch.
+     */
+    public static void shutdown(Context context) {
+        AndroidWifiBackend backend = AndroidWifiBackend.release(context);
+        if (backend != null) {
+            shutdown(backend);
+        }
+    }
+
+    static void shutdown(WifiBackend backend) {
+        WifiEventDispatcher.release(backend);
+        if (isVersionEqualsOrAboveLollipop()) {
+            WifiNetworkTracker.release(backend);
+        }
+        ListenerWatchdog.release(backend);
+        ConfiguredNetworksCache.release(backend);
+        WifiCommandExecutor.release(backend);
+        ConnectivityValidator.release(backend);
+        NetworkHistoryStore.release(backend);
+        SignalScorer.release(backend);
     }
 
     public static void setBindingEnabled(boolean shouldBindToNetwork) {
@@ -51,42 +113,278 @@ public class WifiConnectionManager
     }
 
     public void connectToAvailableSSID(List<String> SSIDs, ConnectionStateChangedListener connectionStateListener) {
-        this.SSIDs = SSIDs;
-        this.connectionStateListener = connectionStateListener;
+        connectToAvailableSSID(SSIDs, ScanResultCache.NO_CACHE, connectionStateListener);
+    }
+
+    public void connectToAvailableSSID(List<String> SSIDs, long maxScanAgeMillis,
+                                       ConnectionStateChangedListener connectionStateListener) {
+        connect(new SSIDMatcher(SSIDs), maxScanAgeMillis, connectionStateListener);
+    }
+
+    public void connectToMatchingSSID(List<SSIDPattern> patterns,
+                                      ConnectionStateChangedListener connectionStateListener) {
+        connectToMatchingSSID(patterns, ScanResultCache.NO_CACHE, connectionStateListener);
+    }
+
+    /**
+     * Like {@link #connectToAvailableSSID(List, long, ConnectionStateChangedListener)} for SSIDs matching any of
+     * the patterns. The patterns are compiled once per call, matching doesn't slow down with their number.
+     */
+    public void connectToMatchingSSID(List<SSIDPattern> patterns, long maxScanAgeMillis,
+                                      ConnectionStateChangedListener connectionStateListener) {
+        connect(SSIDMatcher.compile(patterns), maxScanAgeMillis, connectionStateListener);
+    }
+
+    /**
+     * Like {@link #connectToAvailableSSID(List, long, ConnectionStateChangedListener)}, but returns a handle that
+     * fails with a {@link WifiConnectionException} carrying the reason. Cancelling it aborts this request only,
+     * without touching the binding of an earlier connection or other operations. A newer connect on the same
+     * manager supersedes the request and cancels the handle.
+     */
+    public WifiOperation<Void> connectToAvailableSSIDAsync(List<String> SSIDs, long maxScanAgeMillis) {
+        return connectAsync(new SSIDMatcher(SSIDs), maxScanAgeMillis);
+    }
+
+    public WifiOperation<Void> connectToMatchingSSIDAsync(List<SSIDPattern> patterns, long maxScanAgeMillis) {
+        return connectAsync(SSIDMatcher.compile(patterns), maxScanAgeMillis);
+    }
+
+    private WifiOperation<Void> connectAsync(SSIDMatcher matcher, long maxScanAgeMillis) {
+        final WifiOperation<Void> operation = new WifiOperation<>(timeoutScheduler);
+        final ConnectionRequest request = connect(matcher, maxScanAgeMillis, new ConnectionStateChangedListener() {
+            @Override
+            public void onConnectionEstablished() {
+                operation.succeed(null);
+            }
+
+            @Override
+            public void onConnectionError(String reason) {
+                operation.fail(new WifiConnectionException(reason));
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                operation.cancel(false);
+            }
+        });
+        operation.setReleaseAction(new Runnable() {
+            @Override
+            public void run() {
+                if (request.finish(ConnectionState.ABORTED)) {
+                    LOGGER.d("Connection operation cancelled");
+                    release(request);
+                }
+            }
+        });
+        return operation;
+    }
+
+    private void connect(SSIDMatcher matcher, long maxScanAgeMillis,
+                         ConnectionStateChangedListener connectionStateListener) {
+        connect(matcher, maxScanAgeMillis, connectionStateListener, null);
+    }
 
-        wifiUtil.setWifiStateChangeListener(this);
+    private ConnectionRequest connect(SSIDMatcher matcher, long maxScanAgeMillis,
+                                      ConnectionStateChangedListener connectionStateListener, Runnable abortCallback) {
+        long totalTimeoutMillis = connectionPolicy.getTotalTimeoutMillis();
+        final ConnectionRequest request = new ConnectionRequest(matcher, maxScanAgeMillis, connectionStateListener,
+                shouldBindToNetwork, clock.elapsedRealtime() + totalTimeoutMillis);
+        request.setAbortCallback(abortCallback);
+        ConnectionRequest previous = currentRequest.getAndSet(request);
+        if (previous != null && previous.finish(ConnectionState.ABORTED)) {
+            LOGGER.d("Abandoning previous connection request in favour of a new one");
+            removeTimeouts(previous);
+            commandExecutor.cancel(previous);
+            // Re-registering below replays the sticky WiFi state to the new request
+            removeListeners();
+            notifyAborted(previous);
+        }
+
+        scanScheduler.reset();
+        metricsRecorder.onRequestStarted();
+        timeoutScheduler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                onRequestTimedOut(request);
+            }
+        }, request, totalTimeoutMillis);
+        if (!fastReconnectEnabled || !tryFastReconnect(request)) {
+            wifiUtil.setWifiStateChangeListener(this);
+        }
+        return request;
+    }
+
+    private void onRequestTimedOut(ConnectionRequest request) {
+        LOGGER.i("Timed out in state %s", request.getState());
+        onConnectionFailed(request, ConnectionFailureReason.TIMED_OUT,
+                format("Couldn't connect within %dms", connectionPolicy.getTotalTimeoutMillis()));
+    }
+
+    private void notifyAborted(ConnectionRequest request) {
+        Runnable abortCallback = request.getAbortCallback();
+        if (abortCallback != null) {
+            callbackScheduler.post(abortCallback);
+        }
+    }
+
+    /**
+     * Skips enabling WiFi and scanning when a target SSID is already connected, or is saved and was seen in
+     * recent scan results. Falls back to the full flow when neither holds.
+     */
+    private boolean tryFastReconnect(final ConnectionRequest request) {
+        final long maxScanAgeMillis = Math.max(request.maxScanAgeMillis, FAST_RECONNECT_MAX_SCAN_AGE_MILLIS);
+        return commandExecutor.execute(request, new Command<FastReconnect>() {
+            @Override
+            public FastReconnect execute() {
+                if (!wifiHelper.isWifiEnabled()) {
+                    return FastReconnect.NOT_POSSIBLE;
+                }
+                String activeSSID = wifiUtil.isActiveNetworkWifi() ? wifiHelper.findActiveSSID(request.matcher) : null;
+                if (activeSSID != null) {
+                    return new FastReconnect(activeSSID, Collections.<String>emptyList());
+                }
+                List<ScanResult> recentResults = wifiUtil.getFreshScanResults(maxScanAgeMillis);
+                return new FastReconnect(null,
+                        wifiHelper.findConfiguredSSIDs(request.matcher, recentResults, networkHistory));
+            }
+        }, callbackScheduler, new Callback<FastReconnect>() {
+            @Override
+            public void onResult(FastReconnect result) {
+                onFastReconnectResult(request, result);
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                onCommandFailed(request, error);
+            }
+        });
+    }
+
+    private void onFastReconnectResult(ConnectionRequest request, FastReconnect result) {
+        if (request.getState() != ConnectionState.WAITING_FOR_WIFI || currentRequest.get() != request) {
+            return;
+        }
+        if (result.activeSSID != null) {
+            LOGGER.d("Already connected to %s, skipping scan", result.activeSSID);
+            onConnectionSucceeded(request);
+        } else if (!result.configuredSSIDs.isEmpty()
+                && request.transition(ConnectionState.WAITING_FOR_WIFI, ConnectionState.CONNECTING)) {
+            LOGGER.d("Saved SSIDs seen recently, enabling them without a scan");
+            List<String> candidates = selectCandidates(result.configuredSSIDs);
+            metricsRecorder.onCandidatesSelected(candidates.size());
+            request.setConfiguredCandidates(true);
+            connectToCandidates(request, candidates);
+        } else {
+            wifiUtil.setWifiStateChangeListener(this);
+        }
+    }
+
+    public ConnectionState getConnectionState() {
+        ConnectionRequest request = currentRequest.get();
+        return request != null ? request.getState() : ConnectionState.IDLE;
     }
 
     @Override
     public void onScanResultsAvailable(List<ScanResult> scanResults) {
+        ConnectionRequest request = currentRequest.get();
+        if (request != null) {
+            onScanResultsAvailable(request, scanResults);
+        }
+    }
+
+    private void onScanResultsAvailable(ConnectionRequest request, List<ScanResult> scanResults) {
+        if (!request.transition(ConnectionState.SCANNING, ConnectionState.CONNECTING)) {
+            return;
+        }
+        scanScheduler.onScanResultsReceived();
+        wifiUtil.removeWifiScanResultsListener(this);
         onConnectionStateChanged(AdvancedConnectionState.SCAN_RESULTS_AVAILABLE);
 
-        availableSSID = wifiHelper.findAvailableSSID(SSIDs, scanResults);
-        if (reentrantLock.tryLock()) {
-            wifiUtil.removeWifiScanResultsListener(this);
+        List<String> candidates = selectCandidates(wifiHelper.findAvailableSSIDs(request.matcher, scanResults));
+        metricsRecorder.onScanResults(scanScheduler.getFirstScanRequestedAt(), scanScheduler.getResultsReceivedAt());
+        metricsRecorder.onCandidatesSelected(candidates.size());
 
-            if (availableSSID != null) {
-                onSSIDAvailable(availableSSID);
-            } else {
-                String reason = "Couldn't find SSID in which we are interested";
-                connectionStateListener.onConnectionError(reason);
-                LOGGER.i(reason);
-            }
+        if (!candidates.isEmpty()) {
+            connectToCandidates(request, candidates);
+        } else {
+            onConnectionFailed(request, ConnectionFailureReason.NO_MATCHING_SSID,
+                    "Couldn't find SSID in which we are interested");
+        }
+    }
+
+    @Override
+    public void onScanTimedOut(int attempts) {
+        ConnectionRequest request = currentRequest.get();
+        if (request != null && request.getState() == ConnectionState.SCANNING) {
+            onConnectionFailed(request, ConnectionFailureReason.NO_SCAN_RESULTS,
+                    format("No scan results received after %d scan attempts", attempts));
         }
     }
 
     public void abort() {
-        wifiUtil.removeNetworkStateChangeListener(this);
-        wifiUtil.removeWifiScanResultsListener(this);
-        wifiUtil.removeWifiStateChangeListener(this);
-        wifiUtil.clearNetworkBinding();
+        ConnectionRequest request = currentRequest.get();
+        if (request != null && request.finish(ConnectionState.ABORTED)) {
+            release(request);
+            notifyAborted(request);
+        }
+        removeListeners();
+        commandExecutor.execute(new Command<Void>() {
+            @Override
+            public Void execute() {
+                wifiUtil.clearNetworkBinding();
+                return null;
+            }
+        });
     }
 
     @Override
     public void onWifiEnabled(boolean initialStickyBroadcast) {
+        final ConnectionRequest request = currentRequest.get();
+        if (request == null || !request.transition(ConnectionState.WAITING_FOR_WIFI, ConnectionState.SCANNING)) {
+            return;
+        }
         wifiUtil.removeWifiStateChangeListener(this);
         onConnectionStateChanged(AdvancedConnectionState.WIFI_ENABLED);
+        metricsRecorder.onWifiEnabled();
+
+        if (request.maxScanAgeMillis <= ScanResultCache.NO_CACHE) {
+            startScan();
+            return;
+        }
+        boolean queued = commandExecutor.execute(request, new Command<List<ScanResult>>() {
+            @Override
+            public List<ScanResult> execute() {
+                return wifiUtil.getFreshScanResults(request.maxScanAgeMillis);
+            }
+        }, callbackScheduler, new Callback<List<ScanResult>>() {
+            @Override
+            public void onResult(List<ScanResult> cachedResults) {
+                onCachedScanResults(request, cachedResults);
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                onCommandFailed(request, error);
+            }
+        });
+        if (!queued) {
+            startScan();
+        }
+    }
+
+    private void onCachedScanResults(ConnectionRequest request, List<ScanResult> cachedResults) {
+        if (request.getState() != ConnectionState.SCANNING) {
+            return;
+        }
+        if (wifiHelper.findAvailableSSID(request.matcher, cachedResults) != null) {
+            LOGGER.d("Wifi is enabled, using scan results seen within %dms", request.maxScanAgeMillis);
+            onScanResultsAvailable(request, cachedResults);
+        } else {
+            startScan();
+        }
+    }
 
+    private void startScan() {
         LOGGER.d("Wifi is enabled, starting scan");
         wifiUtil.setWifiScanResultsListener(this);
         scheduleWifiScan();
@@ -96,48 +394,269 @@ public class WifiConnectionManager
     public void onWifiDisabled(boolean initialStickyBroadcast) {
         onConnectionStateChanged(AdvancedConnectionState.WIFI_DISABLED);
         if (initialStickyBroadcast) {
-            wifiHelper.enableWifi();
+            commandExecutor.execute(new Command<Void>() {
+                @Override
+                public Void execute() {
+                    wifiHelper.enableWifi();
+                    return null;
+                }
+            });
         } else {
             abort();
         }
     }
 
     @Override
-    public void onNetworkConnected() {
+    public void onNetworkConnected(String SSID) {
+        final ConnectionRequest request = currentRequest.get();
+        if (request == null || request.getState() != ConnectionState.CONNECTING) {
+            return;
+        }
         onConnectionStateChanged(AdvancedConnectionState.NETWORK_CONNECTED);
-        if (isConnectedToSSID(availableSSID)) {
-            connectionStateListener.onConnectionEstablished();
+        final int attempt = request.getAttempt();
+        final String candidate = request.getCandidate();
+        if (SSID != null && !WifiHelper.areEqual(SSID, candidate)) {
+            LOGGER.d("Connected to %s while connecting to %s, waiting", SSID, candidate);
+            return;
         }
-        wifiUtil.removeNetworkStateChangeListener(this);
+        commandExecutor.execute(request, new Command<Boolean>() {
+            @Override
+            public Boolean execute() {
+                return isConnectedToSSID(candidate);
+            }
+        }, callbackScheduler, new Callback<Boolean>() {
+            @Override
+            public void onResult(Boolean connected) {
+                // Broadcasts for other networks may arrive while associating, keep waiting till attempt times out
+                if (connected && isCurrentAttempt(request, attempt)) {
+                    metricsRecorder.onNetworkConnected();
+                    if (!request.isWaitingForBinding()) {
+                        onConnectionSucceeded(request);
+                    }
+                }
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                if (isCurrentAttempt(request, attempt)) {
+                    onCommandFailed(request, error);
+                }
+            }
+        });
     }
 
     @Override
     public void onNetworkBound() {
+        ConnectionRequest request = currentRequest.get();
+        if (request == null || request.getState() != ConnectionState.CONNECTING) {
+            return;
+        }
         onConnectionStateChanged(AdvancedConnectionState.NETWORK_BOUND);
-        connectionStateListener.onConnectionEstablished();
-        wifiUtil.removeNetworkStateChangeListener(this);
+        metricsRecorder.onNetworkBound();
+        onConnectionSucceeded(request);
+    }
+
+    // SSIDs that connected well before come first even if they scored lower, so rank before capping the list
+    private List<String> selectCandidates(List<String> availableSSIDs) {
+        List<String> ranked = networkHistory.rank(availableSSIDs);
+        int maxCandidates = connectionPolicy.getMaxCandidates();
+        return ranked.size() > maxCandidates ? new ArrayList<>(ranked.subList(0, maxCandidates)) : ranked;
     }
 
-    private void onSSIDAvailable(String availableSSID) {
-        LOGGER.i(format("SSID %s is available.", availableSSID));
+    private void connectToCandidates(ConnectionRequest request, List<String> candidates) {
+        LOGGER.i("%d candidate SSIDs available: %s", candidates.size(), candidates);
+        request.setCandidates(candidates);
+        wifiUtil.setNetworkStateChangeListener(this);
+        tryNextCandidate(request, ConnectionRequest.NO_ATTEMPT);
+    }
+
+    private void tryNextCandidate(final ConnectionRequest request, int currentAttempt) {
+        final int attempt = request.nextAttempt(currentAttempt);
+        if (attempt == ConnectionRequest.NO_ATTEMPT || request.getState() != ConnectionState.CONNECTING) {
+            return;
+        }
+        timeoutScheduler.removeCallbacksAndMessages(request.attemptToken);
+        request.setWaitingForBinding(false);
+
+        List<String> candidates = request.getCandidates();
+        long remainingMillis = request.deadline - clock.elapsedRealtime();
+        if (remainingMillis <= 0) {
+            onConnectionFailed(request, ConnectionFailureReason.TIMED_OUT,
+                    format("Couldn't connect within %dms", connectionPolicy.getTotalTimeoutMillis()));
+            return;
+        }
+        if (attempt >= candidates.size()) {
+            onConnectionFailed(request, ConnectionFailureReason.CANDIDATES_EXHAUSTED,
+                    format("Couldn't connect to any of %d available SSIDs", candidates.size()));
+            return;
+        }
+
+        String SSID = candidates.get(attempt);
+        metricsRecorder.onAttemptStarted(SSID, attempt > 0);
+        timeoutScheduler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                onAttemptTimedOut(request, attempt);
+            }
+        }, request.attemptToken, Math.min(connectionPolicy.getAttemptTimeoutMillis(), remainingMillis));
+        onSSIDAvailable(request, attempt, SSID);
+    }
 
-        if (isConnectedToSSID(availableSSID)) {
-            LOGGER.d(format("Current active SSID is already %s.", availableSSID));
-            connectionStateListener.onConnectionEstablished();
+    private void onAttemptTimedOut(ConnectionRequest request, int attempt) {
+        if (!isCurrentAttempt(request, attempt)) {
             return;
         }
+        LOGGER.i("Timed out connecting to %s", request.getCandidate());
+        metricsRecorder.onAttemptFailed(ConnectionFailureReason.ATTEMPT_TIMED_OUT);
+        networkHistory.recordFailure(request.getCandidate());
+        wifiUtil.cancelPendingBinding();
+        tryNextCandidate(request, attempt);
+    }
+
+    private void onSSIDAvailable(final ConnectionRequest request, final int attempt, final String availableSSID) {
+        LOGGER.i("SSID %s is available.", availableSSID);
+
+        final boolean bindToNetwork = isVersionEqualsOrAboveLollipop() && request.bindToNetwork;
+        metricsRecorder.onNetworkEnabled();
+        boolean queued = commandExecutor.execute(request, new Command<EnableResult>() {
+            @Override
+            public EnableResult execute() {
+                if (!isCurrentAttempt(request, attempt)) {
+                    return EnableResult.STALE;
+                }
+                if (isConnectedToSSID(availableSSID)) {
+                    return EnableResult.ALREADY_CONNECTED;
+                }
+                if (bindToNetwork) {
+                    request.setWaitingForBinding(true);
+                }
+                boolean enabling = request.hasConfiguredCandidates()
+                        ? wifiHelper.enableConfiguredNetwork(availableSSID, networkHistory.getNetworkId(availableSSID))
+                        : wifiHelper.connectToSSID(availableSSID);
+                // Binding can report an already available network right away, so it only starts once enabled
+                if (enabling && bindToNetwork && isCurrentAttempt(request, attempt)) {
+                    wifiUtil.bindToNetwork(availableSSID, WifiConnectionManager.this);
+                }
+                return enabling ? EnableResult.ENABLED : EnableResult.FAILED;
+            }
+        }, callbackScheduler, new Callback<EnableResult>() {
+            @Override
+            public void onResult(EnableResult result) {
+                onEnableResult(request, attempt, availableSSID, result);
+            }
 
-        if (isVersionEqualsOrAboveLollipop() && shouldBindToNetwork) {
-            wifiUtil.bindToNetwork(availableSSID, this);
+            @Override
+            public void onError(RuntimeException error) {
+                if (isCurrentAttempt(request, attempt)) {
+                    onEnableNetworkFailed(request, attempt, availableSSID);
+                }
+            }
+        });
+        if (!queued) {
+            onEnableNetworkFailed(request, attempt, availableSSID);
         }
+    }
 
-        wifiUtil.setNetworkStateChangeListener(this);
-        boolean connectingToSSID = wifiHelper.connectToSSID(availableSSID);
-        if (!connectingToSSID) {
-            String reason = "Error while enabling network.";
-            connectionStateListener.onConnectionError(reason);
-            LOGGER.d(reason);
+    private void onEnableResult(ConnectionRequest request, int attempt, String SSID, EnableResult result) {
+        if (!isCurrentAttempt(request, attempt)) {
+            return;
         }
+        if (result == EnableResult.ALREADY_CONNECTED) {
+            LOGGER.d("Current active SSID is already %s.", SSID);
+            onConnectionSucceeded(request);
+        } else if (result == EnableResult.FAILED) {
+            onEnableNetworkFailed(request, attempt, SSID);
+        }
+    }
+
+    private void onEnableNetworkFailed(ConnectionRequest request, int attempt, String SSID) {
+        LOGGER.d("Error while enabling network %s, trying next candidate", SSID);
+        metricsRecorder.onAttemptFailed(ConnectionFailureReason.ENABLE_NETWORK_FAILED);
+        networkHistory.recordFailure(SSID);
+        wifiUtil.cancelPendingBinding();
+        tryNextCandidate(request, attempt);
+    }
+
+    private boolean isCurrentAttempt(ConnectionRequest request, int attempt) {
+        return request.getState() == ConnectionState.CONNECTING && request.getAttempt() == attempt;
+    }
+
+    private void onConnectionSucceeded(ConnectionRequest request) {
+        if (!request.finish(ConnectionState.CONNECTED)) {
+            return;
+        }
+        release(request);
+        recordConnection(request.matcher, metricsRecorder.onSucceeded());
+        final ConnectionStateChangedListener listener = request.listener;
+        callbackScheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onConnectionEstablished();
+            }
+        });
+    }
+
+    private void onConnectionFailed(ConnectionRequest request, ConnectionFailureReason failureReason,
+                                    final String reason) {
+        if (!request.finish(ConnectionState.FAILED)) {
+            return;
+        }
+        release(request);
+        metricsRecorder.onFailed(failureReason);
+        LOGGER.i(reason);
+        final ConnectionStateChangedListener listener = request.listener;
+        callbackScheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onConnectionError(reason);
+            }
+        });
+    }
+
+    private void onCommandFailed(ConnectionRequest request, RuntimeException error) {
+        onConnectionFailed(request, ConnectionFailureReason.COMMAND_FAILED,
+                format("WiFi command failed in state %s: %s", request.getState(), error));
+    }
+
+    private void recordConnection(final SSIDMatcher matcher, final long timeToConnectMillis) {
+        commandExecutor.execute(new Command<Void>() {
+            @Override
+            public Void execute() {
+                WifiInfo connectionInfo = wifiHelper.getConnectionInfo();
+                String SSID = connectionInfo != null ? connectionInfo.getSSID() : null;
+                if (matcher.matches(SSID)) {
+                    SSID = StringUtil.trimQuotes(SSID);
+                    signalScorer.setPreferredBSSID(connectionInfo.getBSSID());
+                    networkHistory.recordSuccess(SSID, connectionInfo.getBSSID(), connectionInfo.getNetworkId(),
+                            timeToConnectMillis);
+                }
+                return null;
+            }
+        });
+    }
+
+    private void release(ConnectionRequest request) {
+        removeTimeouts(request);
+        commandExecutor.cancel(request);
+        if (currentRequest.get() != request) {
+            return;
+        }
+        removeListeners();
+        if (request.getState() != ConnectionState.CONNECTED) {
+            wifiUtil.cancelPendingBinding();
+        }
+    }
+
+    private void removeTimeouts(ConnectionRequest request) {
+        timeoutScheduler.removeCallbacksAndMessages(request);
+        timeoutScheduler.removeCallbacksAndMessages(request.attemptToken);
+    }
+
+    private void removeListeners() {
+        scanScheduler.cancel();
+        wifiUtil.removeWifiStateChangeListener(this);
+        wifiUtil.removeWifiScanResultsListener(this);
+        wifiUtil.removeNetworkStateChangeListener(this);
     }
 
     public Network getBoundNetworkForProcess() {
@@ -148,25 +667,120 @@ public class WifiConnectionManager
         wifiUtil.reportBoundNetworkConnectivity();
     }
 
+    /**
+     * Probes whether the bound network (or the default network when not bound) reaches the internet, sits behind
+     * a captive portal or has no connectivity. The listener is called on the callback handler.
+     */
+    public void validateBoundNetwork(ValidationListener listener) {
+        validator.validateBoundNetwork(callbackScheduler, listener);
+    }
+
+    public void setValidationPolicy(ValidationPolicy validationPolicy) {
+        validator.setPolicy(validationPolicy);
+    }
+
+    public ValidationPolicy getValidationPolicy() {
+        return validator.getPolicy();
+    }
+
+    public void clearValidationCache() {
+        validator.clearCache();
+    }
+
     public boolean isConnectedToSSID(String availableSSID) {
         return wifiUtil.isActiveNetworkWifi() && wifiHelper.hasActiveSSID(availableSSID);
     }
 
     private void scheduleWifiScan() {
-        //TODO Find out why broadcast for scan results not received when scanning is started just after WiFi is enabled on Sony & One Plus.
-        // This happens when SSID is already saved
-        final int TWO_SECONDS = 2000;
-        new Handler().postDelayed(new Runnable() {
+        // Some devices (seen on Sony & One Plus) drop the scan results broadcast when scanning is started just
+        // after WiFi is enabled, the scheduler re-requests the scan when results don't arrive in time.
+        scanScheduler.start(this, this);
+    }
+
+    public void setScanPolicy(ScanPolicy scanPolicy) {
+        scanScheduler.setPolicy(scanPolicy);
+    }
+
+    public ScanPolicy getScanPolicy() {
+        return scanScheduler.getPolicy();
+    }
+
+    public void setConnectionPolicy(ConnectionPolicy connectionPolicy) {
+        this.connectionPolicy = connectionPolicy;
+    }
+
+    public ConnectionPolicy getConnectionPolicy() {
+        return connectionPolicy;
+    }
+
+    /**
+     * Adds or updates the configurations in one pass on the WiFi command worker thread, earlier ones get higher
+     * priorities. The listener is called on the callback handler.
+     */
+    public void provisionNetworks(List<WifiConfiguration> configurations, final ProvisioningListener listener) {
+        final List<WifiConfiguration> batch = new ArrayList<>(configurations);
+        boolean queued = commandExecutor.execute(null, new Command<ProvisioningResult>() {
             @Override
-            public void run() {
-                wifiHelper.startScan();
+            public ProvisioningResult execute() {
+                return wifiHelper.provisionNetworks(batch);
             }
-        }, TWO_SECONDS);
+        }, callbackScheduler, new Callback<ProvisioningResult>() {
+            @Override
+            public void onResult(ProvisioningResult result) {
+                listener.onNetworksProvisioned(result);
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                listener.onNetworksProvisioned(failedProvisioning(batch));
+            }
+        });
+        if (!queued) {
+            listener.onNetworksProvisioned(failedProvisioning(batch));
+        }
+    }
+
+    private static ProvisioningResult failedProvisioning(List<WifiConfiguration> batch) {
+        return new ProvisioningResult(0, 0, 0, batch.size(), false);
+    }
+
+    public void setScoringPolicy(ScoringPolicy scoringPolicy) {
+        signalScorer.setPolicy(scoringPolicy);
+    }
+
+    public ScoringPolicy getScoringPolicy() {
+        return signalScorer.getPolicy();
+    }
+
+    public void clearNetworkHistory() {
+        networkHistory.clear();
+    }
+
+    public void setFastReconnectEnabled(boolean fastReconnectEnabled) {
+        this.fastReconnectEnabled = fastReconnectEnabled;
     }
 
-    private void onConnectionStateChanged(AdvancedConnectionState currentConnectionState) {
-        if (advancedStateListener != null) {
-            advancedStateListener.onConnectionStateChanged(currentConnectionState);
+    public boolean isFastReconnectEnabled() {
+        return fastReconnectEnabled;
+    }
+
+    public int getLastScanAttempts() {
+        return scanScheduler.getAttempts();
+    }
+
+    public long getLastTimeToScanResultsMillis() {
+        return scanScheduler.getTimeToResultsMillis();
+    }
+
+    private void onConnectionStateChanged(final AdvancedConnectionState currentConnectionState) {
+        final AdvancedConnectionStateListener listener = advancedStateListener;
+        if (listener != null) {
+            callbackScheduler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onConnectionStateChanged(currentConnectionState);
+                }
+            });
         }
     }
 
@@ -174,13 +788,168 @@ public class WifiConnectionManager
         this.advancedStateListener = advancedStateListener;
     }
 
-    private boolean isVersionEqualsOrAboveLollipop() {
+    public void setConnectionMetricsListener(ConnectionMetricsListener metricsListener) {
+        metricsRecorder.setListener(metricsListener);
+    }
+
+    public static ConnectionMetrics getConnectionMetrics() {
+        return connectionMetrics;
+    }
+
+    public static ConnectionEventLog getConnectionEventLog() {
+        return connectionEventLog;
+    }
+
+    public static ListenerDiagnostics getListenerDiagnostics() {
+        return listenerDiagnostics;
+    }
+
+    /**
+     * Applies to listeners registered from now on, including those passed to {@link #scanForNetworks}. Scans
+     * started with {@link #scanForNetworksAsync(long)} always hold their listener strongly, as nothing else does.
+     */
+    public void setListenerPolicy(ListenerPolicy listenerPolicy) {
+        wifiUtil.setListenerPolicy(listenerPolicy);
+    }
+
+    public ListenerPolicy getListenerPolicy() {
+        return wifiUtil.getListenerPolicy();
+    }
+
+    private static boolean isVersionEqualsOrAboveLollipop() {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
     }
 
+    /**
+     * Handler on which {@link ConnectionStateChangedListener} is called and results of WiFi commands, which
+     * run on a worker thread, are handled. Defaults to the main thread.
+     */
+    public void setCallbackHandler(Handler handler) {
+        this.callbackScheduler = new HandlerScheduler(handler);
+    }
+
+    public void setEventDeliveryHandler(Handler handler) {
+        wifiUtil.setEventDeliveryScheduler(new HandlerScheduler(handler));
+    }
+
+    public void deliverEventsOnBackgroundThread() {
+        wifiUtil.deliverEventsOnBackgroundThread();
+    }
+
     public void scanForNetworks(ScanResultsListener listener) {
-        wifiUtil.setWifiScanResultsListener(listener);
-        wifiHelper.startScan();
+        scanForNetworks(listener, ScanResultCache.NO_CACHE);
+    }
+
+    /**
+     * Scan results seen within {@code maxScanAgeMillis} are looked up on the WiFi command worker thread and
+     * passed to the listener on the callback handler. Fresh results arrive like any scan results broadcast.
+     */
+    public void scanForNetworks(ScanResultsListener listener, long maxScanAgeMillis) {
+        scanForNetworks(listener, maxScanAgeMillis, wifiUtil.getListenerPolicy());
+    }
+
+    // Reading the platform's scan results is an IPC, so the cache is checked on the worker thread
+    private void scanForNetworks(final ScanResultsListener listener, final long maxScanAgeMillis,
+                                 final ListenerPolicy policy) {
+        if (maxScanAgeMillis <= ScanResultCache.NO_CACHE) {
+            requestScan(listener, policy);
+            return;
+        }
+        boolean queued = commandExecutor.execute(null, new Command<List<ScanResult>>() {
+            @Override
+            public List<ScanResult> execute() {
+                return wifiUtil.getFreshScanResults(maxScanAgeMillis);
+            }
+        }, callbackScheduler, new Callback<List<ScanResult>>() {
+            @Override
+            public void onResult(List<ScanResult> cachedResults) {
+                if (!cachedResults.isEmpty()) {
+                    listener.onScanResultsAvailable(Collections.unmodifiableList(cachedResults));
+                } else {
+                    requestScan(listener, policy);
+                }
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                requestScan(listener, policy);
+            }
+        });
+        if (!queued) {
+            requestScan(listener, policy);
+        }
+    }
+
+    private void requestScan(ScanResultsListener listener, ListenerPolicy policy) {
+        wifiUtil.setWifiScanResultsListener(listener, policy);
+        wifiUtil.requestScan(listener, getScanPolicy().getResultsTimeoutMillis());
+    }
+
+    /**
+     * Like {@link #scanForNetworks(ScanResultsListener, long)}, but returns a handle. Cancelling it, or timing it
+     * out, unregisters only the listener of this scan, other scans and connects keep running.
+     */
+    public WifiOperation<List<ScanResult>> scanForNetworksAsync(long maxScanAgeMillis) {
+        final WifiOperation<List<ScanResult>> operation = new WifiOperation<>(timeoutScheduler);
+        final ScanResultsListener listener = new ScanResultsListener() {
+            @Override
+            public void onScanResultsAvailable(List<ScanResult> scanResults) {
+                wifiUtil.removeWifiScanResultsListener(this);
+                operation.succeed(scanResults);
+            }
+        };
+        operation.setReleaseAction(new Runnable() {
+            @Override
+            public void run() {
+                wifiUtil.removeWifiScanResultsListener(listener);
+            }
+        });
+        ListenerPolicy policy = wifiUtil.getListenerPolicy();
+        scanForNetworks(listener, maxScanAgeMillis, new ListenerPolicy(false, policy.getIdleTimeoutMillis()));
+        return operation;
+    }
+
+    public void addScanResultsDeltaListener(ScanResultsDeltaListener listener) {
+        addScanResultsDeltaListener(listener, ScanResultsDiffer.DEFAULT_RSSI_THRESHOLD);
+    }
+
+    /**
+     * Reports APs added, removed or changed by at least {@code rssiThreshold} dBm on every scan results
+     * broadcast, starting with all APs as added. Unlike {@link #scanForNetworks} it doesn't trigger scans.
+     */
+    public void addScanResultsDeltaListener(ScanResultsDeltaListener listener, int rssiThreshold) {
+        wifiUtil.addScanResultsDeltaListener(listener, rssiThreshold);
+    }
+
+    public void removeScanResultsDeltaListener(ScanResultsDeltaListener listener) {
+        wifiUtil.removeScanResultsDeltaListener(listener);
+    }
+
+    /**
+     * Network state broadcasts arriving within the window are merged into one transition, 0 delivers each one.
+     */
+    public void setNetworkStateCoalescingWindow(long windowMillis) {
+        wifiUtil.setNetworkStateCoalescingWindow(windowMillis);
+    }
+
+    public void setScanBudget(int scans, long periodMillis) {
+        wifiUtil.setScanBudget(scans, periodMillis);
+    }
+
+    private static class FastReconnect {
+        static final FastReconnect NOT_POSSIBLE = new FastReconnect(null, Collections.<String>emptyList());
+
+        final String activeSSID;
+        final List<String> configuredSSIDs;
+
+        FastReconnect(String activeSSID, List<String> configuredSSIDs) {
+            this.activeSSID = activeSSID;
+            this.configuredSSIDs = configuredSSIDs;
+        }
+    }
+
+    private enum EnableResult {
+        ENABLED, ALREADY_CONNECTED, FAILED, STALE
     }
 
     public interface ConnectionStateChangedListener {
@@ -192,4 +961,20 @@ public class WifiConnectionManager
     public interface AdvancedConnectionStateListener {
         void onConnectionStateChanged(AdvancedConnectionState connectionState);
     }
+
+    public interface ValidationListener {
+        void onValidationFinished(ValidationResult result);
+    }
+
+    public interface ProvisioningListener {
+        void onNetworksProvisioned(ProvisioningResult result);
+    }
+
+    public interface ConnectionMetricsListener {
+        void onPhaseCompleted(ConnectionPhase phase, long durationMillis);
+
+        void onConnectionEstablished(long timeToConnectMillis);
+
+        void onConnectionFailed(ConnectionFailureReason reason, long elapsedMillis);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.intentfilter.wificonnect;
+
+/**
+ * A platform broadcast reduced to what the library needs, delivered by {@link WifiBackend} to its listeners.
+ */
+final class WifiEvent {
+    enum Type {
+        WIFI_STATE_CHANGED, NETWORK_STATE_CHANGED, SCAN_RESULTS_AVAILABLE, CONFIGURED_NETWORKS_CHANGED
+    }
+
+    static final int UNKNOWN = -1;
+
+    final Type type;
+    // One of WifiManager's WIFI_STATE_* for WIFI_STATE_CHANGED
+    final int wifiState;
+    // NETWORK_STATE_CHANGED only, detailedState is the NetworkInfo.DetailedState ordinal
+    final boolean connected;
+    final int detailedState;
+    final String SSID;
+    // The state replayed to a newly registered listener rather than a change
+    final boolean initialStickyBroadcast;
+
+    private WifiEvent(Type type, int wifiState, boolean connected, int detailedState, String SSID,
+                      boolean initialStickyBroadcast) {
+        this.type = type;
+        this.wifiState = wifiState;
+        this.connected = connected;
+        this.detailedState = detailedState;
+        this.SSID = SSID;
+        this.initialStickyBroadcast = initialStickyBroadcast;
+    }
+
+    static WifiEvent wifiStateChanged(int wifiState, boolean initialStickyBroadcast) {
+        return new WifiEvent(Type.WIFI_STATE_CHANGED, wifiState, false, UNKNOWN, null, initialStickyBroadcast);
+    }
+
+    static WifiEvent networkStateChanged(boolean connected, int detailedState, String SSID,
+                                         boolean initialStickyBroadcast) {
+        return new WifiEvent(Type.NETWORK_STATE_CHANGED, UNKNOWN, connected, detailedState, SSID,
+                initialStickyBroadcast);
+    }
+
+    static WifiEvent scanResultsAvailable() {
+        return new WifiEvent(Type.SCAN_RESULTS_AVAILABLE, UNKNOWN, false, UNKNOWN, null, false);
+    }
+
+    static WifiEvent configuredNetworksChanged() {
+        return new WifiEvent(Type.CONFIGURED_NETWORKS_CHANGED, UNKNOWN, false, UNKNOWN, null, false);
+    }
+
+    @Override
+    public String toString() {
+        return "WifiEvent{type=" + type + ", wifiState=" + wifiState + ", connected=" + connected
+                + ", detailedState=" + detailedState + ", SSID=" + SSID + ", sticky=" + initialStickyBroadcast + "}";
+    }
+}
@@ -0,0 +1,493 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+import android.support.annotation.NonNull;
+
+import com.intentfilter.wificonnect.ConnectionEventLog.EventType;
+import com.intentfilter.wificonnect.WifiBackend.EventListener;
+import com.intentfilter.wificonnect.WifiCommandExecutor.Callback;
+import com.intentfilter.wificonnect.WifiCommandExecutor.Command;
+import com.intentfilter.wificonnect.WifiUtil.NetworkStateChangeListener;
+import com.intentfilter.wificonnect.WifiUtil.WifiStateChangeListener;
+import com.intentfilter.wificonnect.helpers.Logger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static android.net.wifi.WifiManager.WIFI_STATE_DISABLED;
+import static android.net.wifi.WifiManager.WIFI_STATE_ENABLED;
+import static android.net.wifi.WifiManager.WIFI_STATE_UNKNOWN;
+
+class WifiEventDispatcher {
+    static final long DEFAULT_COALESCING_WINDOW_MILLIS = 100;
+    private static final Map<WifiBackend, WifiEventDispatcher> dispatchers = new HashMap<>();
+
+    private final WifiBackend backend;
+    private final Logger logger;
+    private final List<ListenerRegistration<WifiStateChangeListener>> wifiStateListeners =
+            new CopyOnWriteArrayList<>();
+    private final List<ListenerRegistration<NetworkStateChangeListener>> networkStateListeners =
+            new CopyOnWriteArrayList<>();
+    private final List<ListenerRegistration<ScanResultsListener>> scanResultsListeners =
+            new CopyOnWriteArrayList<>();
+    private final List<ScanResultsDiffer> scanResultsDiffers = new CopyOnWriteArrayList<>();
+    private final ScanResultCache scanResultCache;
+    private final ScanCoordinator scanCoordinator;
+    private final WifiCommandExecutor commandExecutor;
+    private final SignalScorer signalScorer;
+    private final ConnectionEventLog eventLog;
+    private final ListenerWatchdog watchdog;
+    private final Scheduler coalescingScheduler;
+    private EventListener wifiStateReceiver;
+    private EventListener networkStateReceiver;
+    private EventListener scanResultsReceiver;
+    private Scheduler ownDeliveryScheduler;
+    private volatile Scheduler deliveryScheduler;
+    private volatile int lastWifiState = WIFI_STATE_UNKNOWN;
+    private volatile long coalescingWindowMillis = DEFAULT_COALESCING_WINDOW_MILLIS;
+    private WifiEvent pendingNetworkState;
+    private int lastReceivedState = WifiEvent.UNKNOWN;
+    private WifiSSID lastReceivedSSID;
+    private boolean lastDeliveredConnected;
+    private WifiSSID lastDeliveredSSID;
+    private final Runnable flushNetworkState = new Runnable() {
+        @Override
+        public void run() {
+            flushNetworkState();
+        }
+    };
+
+    private WifiEventDispatcher(WifiBackend backend) {
+        this.backend = backend;
+        this.eventLog = WifiConnectionManager.getConnectionEventLog();
+        this.scanResultCache = new ScanResultCache(backend.getClock());
+        this.scanCoordinator = new ScanCoordinator(backend);
+        this.commandExecutor = WifiCommandExecutor.forBackend(backend);
+        this.coalescingScheduler = backend.getMainScheduler();
+        this.signalScorer = SignalScorer.forBackend(backend);
+        this.watchdog = ListenerWatchdog.forBackend(backend);
+        this.logger = Logger.loggerFor(WifiEventDispatcher.class);
+    }
+
+    static synchronized WifiEventDispatcher forBackend(WifiBackend backend) {
+        WifiEventDispatcher dispatcher = dispatchers.get(backend);
+        if (dispatcher == null) {
+            dispatcher = new WifiEventDispatcher(backend);
+            dispatchers.put(backend, dispatcher);
+        }
+        return dispatcher;
+    }
+
+    static synchronized void release(WifiBackend backend) {
+        WifiEventDispatcher dispatcher = dispatchers.remove(backend);
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    synchronized void setDeliveryScheduler(Scheduler scheduler) {
+        quitDeliveryThread();
+        this.deliveryScheduler = scheduler;
+    }
+
+    synchronized void deliverOnBackgroundThread() {
+        if (ownDeliveryScheduler != null) {
+            return;
+        }
+        ownDeliveryScheduler = backend.newBackgroundScheduler(WifiEventDispatcher.class.getSimpleName());
+        this.deliveryScheduler = ownDeliveryScheduler;
+    }
+
+    synchronized void addWifiStateChangeListener(@NonNull WifiStateChangeListener listener, ListenerPolicy policy) {
+        if (find(wifiStateListeners, listener) != null) {
+            return;
+        }
+        ListenerRegistration<WifiStateChangeListener> registration =
+                new ListenerRegistration<>(listener, policy, backend.getClock());
+        wifiStateListeners.add(registration);
+
+        if (wifiStateReceiver == null) {
+            wifiStateReceiver = new EventListener() {
+                @Override
+                public void onEvent(WifiEvent event) {
+                    if (event.wifiState == lastWifiState && !event.initialStickyBroadcast) {
+                        return;
+                    }
+                    lastWifiState = event.wifiState;
+                    eventLog.record(EventType.WIFI_STATE_CHANGED, ConnectionEventLog.NO_SSID, event.wifiState, 0);
+                    dispatchWifiState(wifiStateListeners, event.wifiState, event.initialStickyBroadcast);
+                }
+            };
+            backend.registerEventListener(WifiEvent.Type.WIFI_STATE_CHANGED, wifiStateReceiver);
+            logger.d("Registered for WiFi State broadcast");
+            watchdog.start();
+        } else if (lastWifiState != WIFI_STATE_UNKNOWN) {
+            // The sticky broadcast went to earlier listeners only, replay it for this one
+            dispatchWifiState(Collections.singletonList(registration), lastWifiState, true);
+        }
+    }
+
+    synchronized void addNetworkStateChangeListener(@NonNull NetworkStateChangeListener listener,
+                                                    ListenerPolicy policy) {
+        if (find(networkStateListeners, listener) != null) {
+            return;
+        }
+        networkStateListeners.add(new ListenerRegistration<>(listener, policy, backend.getClock()));
+
+        if (networkStateReceiver == null) {
+            networkStateReceiver = new EventListener() {
+                @Override
+                public void onEvent(WifiEvent event) {
+                    onNetworkStateReceived(event);
+                }
+            };
+            backend.registerEventListener(WifiEvent.Type.NETWORK_STATE_CHANGED, networkStateReceiver);
+            logger.d("Registered for Network State broadcast");
+            watchdog.start();
+        }
+    }
+
+    synchronized void addScanResultsListener(@NonNull ScanResultsListener listener, ListenerPolicy policy) {
+        if (find(scanResultsListeners, listener) != null) {
+            return;
+        }
+        scanResultsListeners.add(new ListenerRegistration<>(listener, policy, backend.getClock()));
+        registerScanResultsReceiver();
+    }
+
+    synchronized void addScanResultsDeltaListener(@NonNull ScanResultsDeltaListener listener, int rssiThreshold) {
+        if (findDiffer(listener) != null) {
+            return;
+        }
+        scanResultsDiffers.add(new ScanResultsDiffer(listener, rssiThreshold));
+        registerScanResultsReceiver();
+    }
+
+    private void registerScanResultsReceiver() {
+        if (scanResultsReceiver == null) {
+            scanResultsReceiver = new EventListener() {
+                @Override
+                public void onEvent(WifiEvent event) {
+                    dispatchScanResults();
+                }
+            };
+            backend.registerEventListener(WifiEvent.Type.SCAN_RESULTS_AVAILABLE, scanResultsReceiver);
+            logger.d("Registered for WiFi Scan results broadcast");
+            watchdog.start();
+        }
+    }
+
+    void removeWifiStateChangeListener(@NonNull WifiStateChangeListener listener) {
+        if (remove(wifiStateListeners, listener)) {
+            logger.d("Removed WiFi State listener, %d remaining", wifiStateListeners.size());
+        }
+    }
+
+    void removeNetworkStateChangeListener(@NonNull NetworkStateChangeListener listener) {
+        if (remove(networkStateListeners, listener)) {
+            logger.d("Removed Network State listener, %d remaining", networkStateListeners.size());
+        }
+    }
+
+    void removeScanResultsListener(@NonNull ScanResultsListener listener) {
+        if (remove(scanResultsListeners, listener)) {
+            logger.d("Removed WiFi Scan results listener, %d remaining", scanResultsListeners.size());
+        }
+    }
+
+    void removeScanResultsDeltaListener(@NonNull ScanResultsDeltaListener listener) {
+        ScanResultsDiffer differ = findDiffer(listener);
+        if (differ != null && scanResultsDiffers.remove(differ)) {
+            logger.d("Removed WiFi Scan results delta listener, %d remaining", scanResultsDiffers.size());
+        }
+    }
+
+    private static <L> ListenerRegistration<L> find(List<ListenerRegistration<L>> registrations, Object listener) {
+        for (ListenerRegistration<L> registration : registrations) {
+            if (registration.isFor(listener)) {
+                return registration;
+            }
+        }
+        return null;
+    }
+
+    private static <L> boolean remove(List<ListenerRegistration<L>> registrations, Object listener) {
+        ListenerRegistration<L> registration = find(registrations, listener);
+        return registration != null && registrations.remove(registration);
+    }
+
+    private ScanResultsDiffer findDiffer(ScanResultsDeltaListener listener) {
+        for (ScanResultsDiffer differ : scanResultsDiffers) {
+            if (differ.getListener() == listener) {
+                return differ;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Starting a scan and reading the last results are IPCs, they run on the WiFi command worker thread. Last
+     * results served instead of a scan are delivered like scan results, no results when the platform call throws.
+     */
+    void requestScan(final ScanResultsListener waiter, final long maxWaitMillis) {
+        commandExecutor.execute(null, new Command<List<ScanResult>>() {
+            @Override
+            public List<ScanResult> execute() {
+                return scanCoordinator.requestScan(maxWaitMillis);
+            }
+        }, resultScheduler(), new Callback<List<ScanResult>>() {
+            @Override
+            public void onResult(List<ScanResult> lastResults) {
+                if (lastResults != null) {
+                    waiter.onScanResultsAvailable(lastResults);
+                }
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                // Nothing to deliver, the scan scheduler retries or times out
+            }
+        });
+    }
+
+    void setCoalescingWindow(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Coalescing window can't be negative");
+        }
+        this.coalescingWindowMillis = windowMillis;
+    }
+
+    void setScanBudget(int scans, long periodMillis) {
+        scanCoordinator.setBudget(scans, periodMillis);
+    }
+
+    /**
+     * Reads the platform's scan results when caching is allowed, callers run it as a WiFi command.
+     */
+    List<ScanResult> getFreshScanResults(long maxAgeMillis) {
+        if (maxAgeMillis > ScanResultCache.NO_CACHE) {
+            scanResultCache.update(backend.getScanResults());
+        }
+        return scanResultCache.getFreshResults(maxAgeMillis);
+    }
+
+    /**
+     * Drops collected and idle listeners and unregisters receivers no listener is left for. Returns whether any
+     * receiver is still registered.
+     */
+    synchronized boolean sweep(ListenerDiagnostics diagnostics) {
+        long now = backend.getClock().elapsedRealtime();
+        sweep(wifiStateListeners, now, diagnostics);
+        sweep(networkStateListeners, now, diagnostics);
+        sweep(scanResultsListeners, now, diagnostics);
+
+        if (wifiStateReceiver != null && wifiStateListeners.isEmpty()) {
+            wifiStateReceiver = unregisterOrphan(wifiStateReceiver, diagnostics);
+            lastWifiState = WIFI_STATE_UNKNOWN;
+        }
+        if (networkStateReceiver != null && networkStateListeners.isEmpty()) {
+            networkStateReceiver = unregisterOrphan(networkStateReceiver, diagnostics);
+            resetNetworkState();
+        }
+        if (scanResultsReceiver != null && scanResultsListeners.isEmpty() && scanResultsDiffers.isEmpty()) {
+            scanResultsReceiver = unregisterOrphan(scanResultsReceiver, diagnostics);
+        }
+        return wifiStateReceiver != null || networkStateReceiver != null || scanResultsReceiver != null;
+    }
+
+    private <L> void sweep(List<ListenerRegistration<L>> registrations, long now, ListenerDiagnostics diagnostics) {
+        for (ListenerRegistration<L> registration : registrations) {
+            if (registration.get() == null) {
+                registrations.remove(registration);
+                diagnostics.recordCollectedListener();
+                logger.i("Dropped a listener that was garbage collected without being removed");
+            } else if (registration.isIdle(now)) {
+                registrations.remove(registration);
+                diagnostics.recordIdleListener();
+                logger.i("Dropped a listener that received no events within its idle timeout");
+            }
+        }
+    }
+
+    private synchronized void shutdown() {
+        wifiStateListeners.clear();
+        networkStateListeners.clear();
+        scanResultsListeners.clear();
+        scanResultsDiffers.clear();
+        wifiStateReceiver = unregister(wifiStateReceiver);
+        networkStateReceiver = unregister(networkStateReceiver);
+        scanResultsReceiver = unregister(scanResultsReceiver);
+        lastWifiState = WIFI_STATE_UNKNOWN;
+        resetNetworkState();
+        quitDeliveryThread();
+    }
+
+    private EventListener unregisterOrphan(EventListener receiver, ListenerDiagnostics diagnostics) {
+        diagnostics.recordOrphanedReceiver();
+        logger.d("Unregistering a broadcast receiver without listeners");
+        return unregister(receiver);
+    }
+
+    private void resetNetworkState() {
+        coalescingScheduler.removeCallbacks(flushNetworkState);
+        pendingNetworkState = null;
+        lastReceivedState = WifiEvent.UNKNOWN;
+        lastReceivedSSID = null;
+        lastDeliveredConnected = false;
+        lastDeliveredSSID = null;
+    }
+
+    private EventListener unregister(EventListener receiver) {
+        if (receiver != null) {
+            backend.unregisterEventListener(receiver);
+        }
+        return null;
+    }
+
+    private void quitDeliveryThread() {
+        if (ownDeliveryScheduler != null) {
+            ownDeliveryScheduler.quit();
+            ownDeliveryScheduler = null;
+        }
+    }
+
+    private void dispatchWifiState(final List<ListenerRegistration<WifiStateChangeListener>> listeners,
+                                   final int wifiState, final boolean initialStickyBroadcast) {
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                for (ListenerRegistration<WifiStateChangeListener> registration : listeners) {
+                    WifiStateChangeListener listener = registration.get();
+                    if (listener == null) {
+                        continue;
+                    }
+                    registration.touch();
+                    if (wifiState == WIFI_STATE_ENABLED) {
+                        listener.onWifiEnabled(initialStickyBroadcast);
+                    } else if (wifiState == WIFI_STATE_DISABLED) {
+                        listener.onWifiDisabled(initialStickyBroadcast);
+                    }
+                }
+            }
+        });
+    }
+
+    private synchronized void onNetworkStateReceived(WifiEvent event) {
+        int state = event.detailedState;
+        WifiSSID SSID = WifiSSID.of(event.SSID);
+        if (state == lastReceivedState && equal(SSID, lastReceivedSSID)) {
+            return;
+        }
+        lastReceivedState = state;
+        lastReceivedSSID = SSID;
+        eventLog.record(EventType.NETWORK_STATE_CHANGED, SSID != null ? SSID.hashCode() : ConnectionEventLog.NO_SSID,
+                state, event.initialStickyBroadcast ? 1 : 0);
+
+        if (event.initialStickyBroadcast) {
+            // Sticky broadcast describes the state before anyone subscribed, listeners want transitions
+            lastDeliveredConnected = event.connected;
+            lastDeliveredSSID = SSID;
+            return;
+        }
+        boolean burstStarted = pendingNetworkState == null;
+        pendingNetworkState = event;
+        if (coalescingWindowMillis == 0) {
+            flushNetworkState();
+        } else if (burstStarted) {
+            coalescingScheduler.postDelayed(flushNetworkState, coalescingWindowMillis);
+        }
+    }
+
+    // Delivers only the state a burst of broadcasts settled on, and only if it's a new connection
+    private void flushNetworkState() {
+        final String SSID;
+        synchronized (this) {
+            WifiEvent event = pendingNetworkState;
+            pendingNetworkState = null;
+            if (event == null) {
+                return;
+            }
+            boolean connected = event.connected;
+            WifiSSID connectedSSID = WifiSSID.of(event.SSID);
+            boolean newConnection = connected && (!lastDeliveredConnected || !equal(connectedSSID, lastDeliveredSSID));
+            lastDeliveredConnected = connected;
+            lastDeliveredSSID = connectedSSID;
+            if (!newConnection) {
+                return;
+            }
+            SSID = connectedSSID != null && !connectedSSID.isEmpty() ? connectedSSID.unquoted() : null;
+        }
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                for (ListenerRegistration<NetworkStateChangeListener> registration : networkStateListeners) {
+                    NetworkStateChangeListener listener = registration.get();
+                    if (listener != null) {
+                        registration.touch();
+                        listener.onNetworkConnected(SSID);
+                    }
+                }
+            }
+        });
+    }
+
+    private static boolean equal(WifiSSID SSID, WifiSSID anotherSSID) {
+        return SSID == null ? anotherSSID == null : SSID.equals(anotherSSID);
+    }
+
+    // Reading the scan results is an IPC, it runs on the WiFi command worker thread
+    private void dispatchScanResults() {
+        if (scanResultsListeners.isEmpty() && scanResultsDiffers.isEmpty()) {
+            return;
+        }
+        commandExecutor.execute(null, new Command<List<ScanResult>>() {
+            @Override
+            public List<ScanResult> execute() {
+                List<ScanResult> scanResults = backend.getScanResults();
+                return scanResults != null ? scanResults : Collections.<ScanResult>emptyList();
+            }
+        }, resultScheduler(), new Callback<List<ScanResult>>() {
+            @Override
+            public void onResult(List<ScanResult> scanResults) {
+                scanResultCache.update(scanResults);
+                signalScorer.update(scanResults);
+                scanResults = Collections.unmodifiableList(scanResults);
+                scanCoordinator.onScanResults(scanResults);
+                for (ListenerRegistration<ScanResultsListener> registration : scanResultsListeners) {
+                    ScanResultsListener listener = registration.get();
+                    if (listener != null) {
+                        registration.touch();
+                        listener.onScanResultsAvailable(scanResults);
+                    }
+                }
+                for (ScanResultsDiffer differ : scanResultsDiffers) {
+                    differ.onScanResults(scanResults);
+                }
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                // The scan finished but its results are lost, let the next request start a new one
+                scanCoordinator.onScanResults(Collections.<ScanResult>emptyList());
+            }
+        });
+    }
+
+    // Events are delivered on the thread receiving them when no scheduler is set, that is the main thread
+    private Scheduler resultScheduler() {
+        Scheduler scheduler = deliveryScheduler;
+        return scheduler != null ? scheduler : backend.getMainScheduler();
+    }
+
+    private void deliver(Runnable dispatch) {
+        Scheduler scheduler = deliveryScheduler;
+        if (scheduler != null) {
+            scheduler.post(dispatch);
+        } else {
+            dispatch.run();
+        }
+    }
+}
@@ -1,63 +1,125 @@
 package com.intentfilter.wificonnect;
 
-import android.content.Context;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiConfiguration;
-import android.net.wifi.WifiManager;
-import android.text.TextUtils;
+import android.net.wifi.WifiInfo;
 
 import com.intentfilter.wificonnect.helpers.Logger;
 import com.intentfilter.wificonnect.helpers.StringUtil;
 
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import static java.lang.String.format;
 
 class WifiHelper {
-    private final WifiManager wifiManager;
+    private final WifiBackend backend;
+    private final ConfiguredNetworksCache configuredNetworks;
+    private final SignalScorer signalScorer;
+    private final NetworkProvisioner provisioner;
     private final Logger logger;
 
-    WifiHelper(Context context) {
-        this.wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+    WifiHelper(WifiBackend backend) {
+        this.backend = backend;
+        this.configuredNetworks = ConfiguredNetworksCache.forBackend(backend);
+        this.signalScorer = SignalScorer.forBackend(backend);
+        this.provisioner = new NetworkProvisioner(backend, configuredNetworks);
         this.logger = Logger.loggerFor(WifiHelper.class);
     }
 
     boolean connectToSSID(String SSID) {
         WifiConfiguration configuration = createOpenWifiConfiguration(SSID);
-        logger.d("Priority assigned to configuration is " + configuration.priority);
+        logger.d("Priority assigned to configuration is %d", configuration.priority);
 
-        int networkId = wifiManager.addNetwork(configuration);
-        logger.d("networkId assigned while adding network is " + networkId);
+        int networkId = backend.addNetwork(configuration);
+        if (networkId != -1) {
+            configuredNetworks.invalidate();
+        }
+        logger.d("networkId assigned while adding network is %d", networkId);
 
         return enableNetwork(SSID, networkId);
     }
 
-    String findAvailableSSID(List<String> SSIDs, List<ScanResult> scanResults) {
-        logger.i("Available SSIDs count: " + scanResults.size());
+    ProvisioningResult provisionNetworks(List<WifiConfiguration> configurations) {
+        return provisioner.provision(configurations);
+    }
+
+    String findAvailableSSID(SSIDMatcher matcher, List<ScanResult> scanResults) {
+        logger.i("Available SSIDs count: %d", scanResults.size());
+
+        ScanResult strongest = matcher.findStrongest(scanResults);
+        return strongest != null ? strongest.SSID : null;
+    }
+
+    /**
+     * Every matching SSID, best scored first. Callers rank them by history before picking the ones to try.
+     */
+    List<String> findAvailableSSIDs(SSIDMatcher matcher, List<ScanResult> scanResults) {
+        logger.i("Available SSIDs count: %d", scanResults.size());
 
-        sortBySignalStrength(scanResults);
+        List<ScanResult> candidates = matcher.findBest(scanResults, Integer.MAX_VALUE, signalScorer);
+        List<String> availableSSIDs = new ArrayList<>(candidates.size());
+        for (ScanResult candidate : candidates) {
+            availableSSIDs.add(candidate.SSID);
+        }
+        return availableSSIDs;
+    }
 
-        for (ScanResult scanResult : scanResults) {
-            if (SSIDs.contains(scanResult.SSID)) {
-                return scanResult.SSID;
+    /**
+     * SSIDs with a network id in the history count as configured without loading the configured networks.
+     */
+    List<String> findConfiguredSSIDs(SSIDMatcher matcher, List<ScanResult> scanResults,
+                                     NetworkHistoryStore networkHistory) {
+        List<String> availableSSIDs = findAvailableSSIDs(matcher, scanResults);
+        List<String> configuredSSIDs = new ArrayList<>(availableSSIDs.size());
+        for (String SSID : availableSSIDs) {
+            if (networkHistory.getNetworkId(SSID) != -1 || getExistingNetworkId(SSID) != -1) {
+                configuredSSIDs.add(SSID);
             }
         }
-        return null;
+        return configuredSSIDs;
+    }
+
+    String findActiveSSID(SSIDMatcher matcher) {
+        WifiInfo connectionInfo = backend.getConnectionInfo();
+        String currentSSID = connectionInfo != null ? connectionInfo.getSSID() : null;
+        return matcher.matches(currentSSID) ? StringUtil.trimQuotes(currentSSID) : null;
+    }
+
+    WifiInfo getConnectionInfo() {
+        return backend.getConnectionInfo();
+    }
+
+    boolean isWifiEnabled() {
+        return backend.isWifiEnabled();
+    }
+
+    /**
+     * Enables the network id the SSID last connected with, if known, and the configured one if that fails.
+     */
+    boolean enableConfiguredNetwork(String SSID, int lastNetworkId) {
+        if (lastNetworkId != -1 && backend.enableNetwork(lastNetworkId, true)) {
+            logger.d("Enabled configured network %s with its last networkId %d", SSID, lastNetworkId);
+            configuredNetworks.invalidate();
+            return true;
+        }
+        int networkId = getExistingNetworkId(SSID);
+        logger.d("Enabling configured network %s with networkId %d", SSID, networkId);
+        return networkId != -1 && enableNetwork(SSID, networkId);
     }
 
     public boolean hasActiveSSID(String SSID) {
-        String currentSSID = wifiManager.getConnectionInfo().getSSID();
+        String currentSSID = backend.getConnectionInfo().getSSID();
         return areEqual(SSID, currentSSID);
     }
 
     public void enableWifi() {
-        wifiManager.setWifiEnabled(true);
+        backend.setWifiEnabled(true);
     }
 
     public static boolean areEqual(String SSID, String anotherSSID) {
-        return TextUtils.equals(StringUtil.trimQuotes(SSID), StringUtil.trimQuotes(anotherSSID));
+        return StringUtil.equalsIgnoringQuotes(SSID, anotherSSID);
     }
 
     public static String formatSSID(String wifiSSID) {
@@ -65,64 +127,50 @@ class WifiHelper {
     }
 
     public void startScan() {
-        wifiManager.startScan();
+        backend.startScan();
     }
 
     public void disconnect() {
-        wifiManager.disconnect();
+        backend.disconnect();
     }
 
     private boolean enableNetwork(String SSID, int networkId) {
         if (networkId == -1) {
             networkId = getExistingNetworkId(SSID);
-            logger.d("networkId of existing network is " + networkId);
+            logger.d("networkId of existing network is %d", networkId);
 
             if (networkId == -1) {
-                logger.e("Couldn't add network with SSID: " + SSID);
+                logger.e("Couldn't add network with SSID: %s", SSID);
                 return false;
             }
         }
 
-        return wifiManager.enableNetwork(networkId, true);
+        boolean enabled = backend.enableNetwork(networkId, true);
+        configuredNetworks.invalidate();
+        return enabled;
     }
 
     private WifiConfiguration createOpenWifiConfiguration(String SSID) {
         WifiConfiguration configuration = new WifiConfiguration();
         configuration.SSID = formatSSID(SSID);
+        // A new BitSet rather than the constructor's, which the unit test android.jar leaves null
+        configuration.allowedKeyManagement = new BitSet();
         configuration.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
         assignHighestPriority(configuration);
         return configuration;
     }
 
-    private void sortBySignalStrength(List<ScanResult> scanResults) {
-        Collections.sort(scanResults, new Comparator<ScanResult>() {
-            @Override
-            public int compare(ScanResult resultOne, ScanResult resultTwo) {
-                return resultTwo.level - resultOne.level;
-            }
-        });
-    }
-
     private int getExistingNetworkId(String SSID) {
-        List<WifiConfiguration> configuredNetworks = wifiManager.getConfiguredNetworks();
-        if (configuredNetworks != null) {
-            for (WifiConfiguration existingConfig : configuredNetworks) {
-                if (areEqual(StringUtil.trimQuotes(existingConfig.SSID), StringUtil.trimQuotes(SSID))) {
-                    return existingConfig.networkId;
-                }
-            }
-        }
-        return -1;
+        return configuredNetworks.getNetworkId(SSID);
     }
 
     private void assignHighestPriority(WifiConfiguration config) {
-        List<WifiConfiguration> configuredNetworks = wifiManager.getConfiguredNetworks();
-        if (configuredNetworks != null) {
-            for (WifiConfiguration existingConfig : configuredNetworks) {
-                if (config.priority <= existingConfig.priority) {
-                    config.priority = existingConfig.priority + 1;
-                }
-            }
+        int maxPriority = configuredNetworks.getMaxPriority();
+        if (maxPriority >= NetworkProvisioner.PRIORITY_COMPACTION_THRESHOLD) {
+            maxPriority = provisioner.compactPriorities();
+        }
+        if (config.priority <= maxPriority) {
+            config.priority = maxPriority + 1;
         }
     }
 }
\ No newline at end of file
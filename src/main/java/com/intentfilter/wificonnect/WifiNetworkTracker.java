@@ -0,0 +1,164 @@
+package com.intentfilter.wificonnect;
+
+import android.annotation.TargetApi;
+import android.net.Network;
+
+import com.intentfilter.wificonnect.WifiBackend.NetworkListener;
+import com.intentfilter.wificonnect.WifiUtil.NetworkStateChangeListener;
+import com.intentfilter.wificonnect.helpers.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static android.os.Build.VERSION_CODES.LOLLIPOP;
+
+/**
+ * Keeps the available WiFi networks by SSID using one callback registered for the lifetime of the backend,
+ * so binding to a network that is already available needs neither a new callback nor an IPC.
+ */
+@TargetApi(LOLLIPOP)
+class WifiNetworkTracker {
+    private static final Map<WifiBackend, WifiNetworkTracker> trackers = new HashMap<>();
+
+    private final WifiBackend backend;
+    private final Logger logger;
+    private final Map<WifiSSID, Network> networksBySSID = new HashMap<>();
+    private final Map<NetworkStateChangeListener, WifiSSID> pendingBindings = new HashMap<>();
+    private NetworkListener networkCallback;
+    private long lastUsedAt;
+
+    private WifiNetworkTracker(WifiBackend backend) {
+        this.backend = backend;
+        this.logger = Logger.loggerFor(WifiNetworkTracker.class);
+    }
+
+    static synchronized WifiNetworkTracker forBackend(WifiBackend backend) {
+        WifiNetworkTracker tracker = trackers.get(backend);
+        if (tracker == null) {
+            tracker = new WifiNetworkTracker(backend);
+            trackers.put(backend, tracker);
+        }
+        return tracker;
+    }
+
+    static synchronized void release(WifiBackend backend) {
+        WifiNetworkTracker tracker = trackers.remove(backend);
+        if (tracker != null) {
+            tracker.release();
+        }
+    }
+
+    /**
+     * Binds the process to the SSID's network right away if it's available, otherwise as soon as it becomes
+     * available. The listener is told once bound.
+     */
+    void bind(String SSID, NetworkStateChangeListener listener) {
+        WifiSSID key = WifiSSID.of(SSID);
+        Network network;
+        synchronized (this) {
+            registerCallback();
+            lastUsedAt = backend.getClock().elapsedRealtime();
+            network = networksBySSID.get(key);
+            if (network == null) {
+                pendingBindings.put(listener, key);
+                logger.d("Waiting for %s to become available to bind to it", SSID);
+                return;
+            }
+        }
+        logger.d("%s is already available, binding to it", SSID);
+        bindTo(network, listener);
+    }
+
+    synchronized boolean cancel(NetworkStateChangeListener listener) {
+        return pendingBindings.remove(listener) != null;
+    }
+
+    synchronized void release() {
+        if (networkCallback != null) {
+            backend.unregisterNetworkListener(networkCallback);
+            networkCallback = null;
+        }
+        networksBySSID.clear();
+        pendingBindings.clear();
+    }
+
+    /**
+     * Unregisters the callback once no binding used it within {@code idleMillis}, dropping bindings still pending
+     * by then. Returns whether the callback is still registered.
+     */
+    synchronized boolean sweep(ListenerDiagnostics diagnostics, long idleMillis) {
+        if (networkCallback == null) {
+            return false;
+        }
+        if (backend.getClock().elapsedRealtime() - lastUsedAt < idleMillis) {
+            return true;
+        }
+        logger.d("Unregistering WiFi network callback unused for %dms, %d bindings pending", idleMillis,
+                pendingBindings.size());
+        diagnostics.recordOrphanedNetworkCallback();
+        release();
+        return false;
+    }
+
+    private void registerCallback() {
+        if (networkCallback != null) {
+            return;
+        }
+        networkCallback = new NetworkListener() {
+            @Override
+            public void onNetworkAvailable(Network network, String SSID) {
+                WifiNetworkTracker.this.onNetworkAvailable(network, SSID);
+            }
+
+            @Override
+            public void onNetworkLost(Network network) {
+                WifiNetworkTracker.this.onNetworkLost(network);
+            }
+        };
+        backend.registerNetworkListener(networkCallback);
+        logger.d("Registered for WiFi network callbacks");
+        ListenerWatchdog.forBackend(backend).start();
+    }
+
+    private void onNetworkAvailable(Network network, String SSID) {
+        WifiSSID key = WifiSSID.of(SSID);
+        logger.i("Network %s is Available", SSID);
+        if (key == null) {
+            return;
+        }
+
+        List<NetworkStateChangeListener> waiting = new ArrayList<>(1);
+        synchronized (this) {
+            networksBySSID.put(key, network);
+            Iterator<Map.Entry<NetworkStateChangeListener, WifiSSID>> iterator = pendingBindings.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<NetworkStateChangeListener, WifiSSID> pending = iterator.next();
+                if (pending.getValue().equals(key)) {
+                    waiting.add(pending.getKey());
+                    iterator.remove();
+                }
+            }
+        }
+        for (NetworkStateChangeListener listener : waiting) {
+            bindTo(network, listener);
+        }
+    }
+
+    private synchronized void onNetworkLost(Network network) {
+        Iterator<Network> iterator = networksBySSID.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().equals(network)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void bindTo(Network network, NetworkStateChangeListener listener) {
+        backend.bindProcessToNetwork(network);
+        logger.i("Bound application to use network %s", network);
+        listener.onNetworkBound();
+    }
+}
@@ -0,0 +1,229 @@
+package com.intentfilter.wificonnect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Handle to one asynchronous connect or scan. Cancelling it, or timing it out, releases only the listeners
+ * and callbacks of this operation. Callbacks run on the thread that completes the operation, which is the
+ * callback handler of the {@link WifiConnectionManager} for connects and the event delivery thread for scans.
+ */
+public class WifiOperation<T> implements Future<T> {
+    private static final int PENDING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final Scheduler timeoutScheduler;
+    private final CountDownLatch completion = new CountDownLatch(1);
+    private final List<Callback<T>> callbacks = new ArrayList<>(1);
+    private int state = PENDING;
+    private T result;
+    private Throwable failure;
+    private Runnable releaseAction;
+
+    WifiOperation(Scheduler timeoutScheduler) {
+        this.timeoutScheduler = timeoutScheduler;
+    }
+
+    synchronized void setReleaseAction(Runnable releaseAction) {
+        this.releaseAction = releaseAction;
+    }
+
+    boolean succeed(T result) {
+        return complete(SUCCEEDED, result, null);
+    }
+
+    boolean fail(Throwable failure) {
+        return complete(FAILED, null, failure);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return complete(CANCELLED, null, new CancellationException("Operation cancelled"));
+    }
+
+    /**
+     * Fails the operation with a {@link TimeoutException} and releases it unless it completes within the timeout.
+     */
+    public WifiOperation<T> withTimeout(long timeoutMillis) {
+        final Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                complete(FAILED, null, new TimeoutException("Operation timed out"));
+            }
+        };
+        timeoutScheduler.postDelayed(timeout, timeoutMillis);
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                timeoutScheduler.removeCallbacks(timeout);
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                timeoutScheduler.removeCallbacks(timeout);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Called right away if the operation already completed.
+     */
+    public WifiOperation<T> addCallback(Callback<T> callback) {
+        synchronized (this) {
+            if (state == PENDING) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        notify(callback);
+        return this;
+    }
+
+    /**
+     * Starts the operation returned by the continuation once this one succeeds, e.g. connecting to an SSID picked
+     * from scan results. Cancelling the returned operation cancels whichever of the two is running.
+     */
+    public <R> WifiOperation<R> then(final Continuation<T, R> continuation) {
+        final WifiOperation<R> chained = new WifiOperation<>(timeoutScheduler);
+        final AtomicReference<WifiOperation<R>> nextStage = new AtomicReference<>();
+        chained.setReleaseAction(new Runnable() {
+            @Override
+            public void run() {
+                cancel(true);
+                WifiOperation<R> stage = nextStage.get();
+                if (stage != null) {
+                    stage.cancel(true);
+                }
+            }
+        });
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                if (chained.isDone()) {
+                    return;
+                }
+                WifiOperation<R> stage;
+                try {
+                    stage = continuation.apply(result);
+                } catch (RuntimeException e) {
+                    chained.fail(e);
+                    return;
+                }
+                nextStage.set(stage);
+                stage.addCallback(new Callback<R>() {
+                    @Override
+                    public void onSuccess(R result) {
+                        chained.succeed(result);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable failure) {
+                        chained.fail(failure);
+                    }
+                });
+                if (chained.isCancelled()) {
+                    stage.cancel(true);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                chained.fail(failure);
+            }
+        });
+        return chained;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state != PENDING;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        completion.await();
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!completion.await(timeout, unit)) {
+            throw new TimeoutException("Operation didn't complete within " + unit.toMillis(timeout) + "ms");
+        }
+        return report();
+    }
+
+    private synchronized T report() throws ExecutionException {
+        if (state == CANCELLED) {
+            throw (CancellationException) failure;
+        }
+        if (state == FAILED) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+
+    private boolean complete(int state, T result, Throwable failure) {
+        List<Callback<T>> toNotify;
+        Runnable release;
+        synchronized (this) {
+            if (this.state != PENDING) {
+                return false;
+            }
+            this.state = state;
+            this.result = result;
+            this.failure = failure;
+            toNotify = new ArrayList<>(callbacks);
+            callbacks.clear();
+            release = state != SUCCEEDED ? releaseAction : null;
+            releaseAction = null;
+        }
+        completion.countDown();
+        if (release != null) {
+            release.run();
+        }
+        for (Callback<T> callback : toNotify) {
+            notify(callback);
+        }
+        return true;
+    }
+
+    private void notify(Callback<T> callback) {
+        T result;
+        Throwable failure;
+        synchronized (this) {
+            result = this.result;
+            failure = this.failure;
+        }
+        if (failure == null) {
+            callback.onSuccess(result);
+        } else {
+            callback.onFailure(failure);
+        }
+    }
+
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onFailure(Throwable failure);
+    }
+
+    public interface Continuation<T, R> {
+        WifiOperation<R> apply(T result);
+    }
+}
@@ -0,0 +1,65 @@
+package com.intentfilter.wificonnect;
+
+import android.support.annotation.NonNull;
+
+import com.intentfilter.wificonnect.helpers.StringUtil;
+
+final class WifiSSID {
+    private final String SSID;
+    private final int start;
+    private final int end;
+    private final int hash;
+
+    private WifiSSID(String SSID) {
+        this.SSID = SSID;
+        this.start = StringUtil.quotedStart(SSID);
+        this.end = StringUtil.quotedEnd(SSID);
+
+        this.hash = hash(SSID, start, end);
+    }
+
+    static int hash(String SSID) {
+        return SSID != null ? hash(SSID, StringUtil.quotedStart(SSID), StringUtil.quotedEnd(SSID)) : 0;
+    }
+
+    private static int hash(String SSID, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + SSID.charAt(i);
+        }
+        return hash;
+    }
+
+    static WifiSSID of(String SSID) {
+        return SSID != null ? new WifiSSID(SSID) : null;
+    }
+
+    @NonNull
+    String unquoted() {
+        return SSID.substring(start, end);
+    }
+
+    boolean isEmpty() {
+        return start == end;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof WifiSSID)) return false;
+
+        WifiSSID that = (WifiSSID) o;
+        return hash == that.hash && end - start == that.end - that.start
+                && SSID.regionMatches(start, that.SSID, that.start, end - start);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return unquoted();
+    }
+}
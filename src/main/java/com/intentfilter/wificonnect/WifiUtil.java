@@ -1,163 +1,133 @@
 package com.intentfilter.wificonnect;
 
 import android.annotation.TargetApi;
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.net.ConnectivityManager;
-import android.net.ConnectivityManager.NetworkCallback;
 import android.net.Network;
-import android.net.NetworkCapabilities;
-import android.net.NetworkInfo;
-import android.net.NetworkRequest;
-import android.net.wifi.WifiManager;
+import android.net.wifi.ScanResult;
 import android.support.annotation.NonNull;
 
 import com.intentfilter.wificonnect.helpers.Logger;
 
-import static android.content.Context.CONNECTIVITY_SERVICE;
-import static android.net.wifi.WifiManager.EXTRA_NETWORK_INFO;
-import static android.net.wifi.WifiManager.NETWORK_STATE_CHANGED_ACTION;
-import static android.net.wifi.WifiManager.SCAN_RESULTS_AVAILABLE_ACTION;
-import static android.net.wifi.WifiManager.WIFI_STATE_CHANGED_ACTION;
-import static android.net.wifi.WifiManager.WIFI_STATE_DISABLED;
-import static android.net.wifi.WifiManager.WIFI_STATE_ENABLED;
+import java.util.List;
+
 import static android.os.Build.VERSION.SDK_INT;
 import static android.os.Build.VERSION_CODES.LOLLIPOP;
-import static android.os.Build.VERSION_CODES.M;
-import static java.lang.String.format;
 
 class WifiUtil {
-    private Context context;
     private Logger logger;
-    private WifiStateChangeListener wifiStateListener;
-    private NetworkStateChangeListener networkStateListener;
-    private ScanResultsListener scanResultsListener;
-    private BroadcastReceiver wifiStateReceiver;
-    private BroadcastReceiver networkStateReceiver;
-    private BroadcastReceiver scanResultsReceiver;
-    private final ConnectivityManager manager;
-    private NetworkCallback networkCallback;
-
-    WifiUtil(Context context) {
-        this.context = context;
+    private final WifiEventDispatcher dispatcher;
+    private final WifiBackend backend;
+    private NetworkStateChangeListener bindingListener;
+    private volatile ListenerPolicy listenerPolicy = ListenerPolicy.defaultPolicy();
+
+    WifiUtil(WifiBackend backend) {
         this.logger = Logger.loggerFor(WifiUtil.class);
-        this.manager = (ConnectivityManager) context.getSystemService(CONNECTIVITY_SERVICE);
+        this.backend = backend;
+        this.dispatcher = WifiEventDispatcher.forBackend(backend);
     }
 
     @TargetApi(LOLLIPOP)
-    void bindToNetwork(final String networkSSID, final NetworkStateChangeListener listener) {
+    synchronized void bindToNetwork(final String networkSSID, final NetworkStateChangeListener listener) {
         if (SDK_INT < LOLLIPOP) {
             logger.i("SDK version is below Lollipop. No need to bind process to network. Skipping...");
             return;
         }
-        logger.i("Currently active network is not " + networkSSID + ", would bind the app to use this when available");
+        logger.i("Currently active network is not %s, would bind the app to use this when available", networkSSID);
 
-        NetworkRequest request = new NetworkRequest.Builder()
-                .addTransportType(NetworkCapabilities.TRANSPORT_WIFI).build();
-        networkCallback = networkCallback(networkSSID, listener);
-        manager.registerNetworkCallback(request, networkCallback);
+        cancelPendingBinding();
+        bindingListener = listener;
+        WifiNetworkTracker.forBackend(backend).bind(networkSSID, listener);
     }
 
-    void setWifiStateChangeListener(@NonNull WifiStateChangeListener listener) {
-        this.wifiStateListener = listener;
-        wifiStateReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                int wifiState = intent.getExtras().getInt(WifiManager.EXTRA_WIFI_STATE);
-                informWifiStateChanged(wifiState, isInitialStickyBroadcast());
+    @TargetApi(LOLLIPOP)
+    synchronized void cancelPendingBinding() {
+        if (bindingListener != null) {
+            if (WifiNetworkTracker.forBackend(backend).cancel(bindingListener)) {
+                logger.d("Cancelled pending network binding");
             }
-        };
-        context.registerReceiver(wifiStateReceiver, new IntentFilter(WIFI_STATE_CHANGED_ACTION));
-        logger.d("Registered for WiFi State broadcast");
+            bindingListener = null;
+        }
+    }
+
+    WifiBackend getBackend() {
+        return backend;
+    }
+
+    void setListenerPolicy(ListenerPolicy listenerPolicy) {
+        this.listenerPolicy = listenerPolicy;
+    }
+
+    ListenerPolicy getListenerPolicy() {
+        return listenerPolicy;
+    }
+
+    void setWifiStateChangeListener(@NonNull WifiStateChangeListener listener) {
+        dispatcher.addWifiStateChangeListener(listener, listenerPolicy);
     }
 
     void setNetworkStateChangeListener(@NonNull NetworkStateChangeListener listener) {
-        this.networkStateListener = listener;
-        networkStateReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                NetworkInfo networkInfo = intent.getParcelableExtra(EXTRA_NETWORK_INFO);
-                informNetworkStateChanged(networkInfo);
-            }
-        };
-        context.registerReceiver(networkStateReceiver, new IntentFilter(NETWORK_STATE_CHANGED_ACTION));
-        logger.d("Registered for Network State broadcast");
-    }
-
-    void setWifiScanResultsListener(final ScanResultsListener scanResultsListener) {
-        this.scanResultsListener = scanResultsListener;
-        scanResultsReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
-                scanResultsListener.onScanResultsAvailable(wifiManager.getScanResults());
-            }
-        };
-        context.registerReceiver(scanResultsReceiver, new IntentFilter(SCAN_RESULTS_AVAILABLE_ACTION));
-        logger.d("Registered for WiFi Scan results broadcast");
+        dispatcher.addNetworkStateChangeListener(listener, listenerPolicy);
+    }
+
+    void setWifiScanResultsListener(@NonNull ScanResultsListener scanResultsListener) {
+        setWifiScanResultsListener(scanResultsListener, listenerPolicy);
+    }
+
+    void setWifiScanResultsListener(@NonNull ScanResultsListener scanResultsListener, ListenerPolicy policy) {
+        dispatcher.addScanResultsListener(scanResultsListener, policy);
+    }
+
+    void addScanResultsDeltaListener(@NonNull ScanResultsDeltaListener listener, int rssiThreshold) {
+        dispatcher.addScanResultsDeltaListener(listener, rssiThreshold);
+    }
+
+    void removeScanResultsDeltaListener(@NonNull ScanResultsDeltaListener listener) {
+        dispatcher.removeScanResultsDeltaListener(listener);
     }
 
     void removeWifiStateChangeListener(@NonNull WifiStateChangeListener listener) {
-        if (this.wifiStateListener != null && this.wifiStateListener.equals(listener)) {
-            this.wifiStateListener = null;
-            context.unregisterReceiver(wifiStateReceiver);
-            logger.d("Un-registered for WiFi State broadcast");
-        }
+        dispatcher.removeWifiStateChangeListener(listener);
     }
 
     void removeNetworkStateChangeListener(@NonNull NetworkStateChangeListener listener) {
-        if (this.networkStateListener != null && this.networkStateListener.equals(listener)) {
-            this.networkStateListener = null;
-            context.unregisterReceiver(networkStateReceiver);
-            logger.d("Un-registered for Network State broadcast");
-        }
+        dispatcher.removeNetworkStateChangeListener(listener);
     }
 
     void removeWifiScanResultsListener(@NonNull ScanResultsListener listener) {
-        if (this.scanResultsListener != null && this.scanResultsListener.equals(listener)) {
-            this.scanResultsListener = null;
-            context.unregisterReceiver(scanResultsReceiver);
-            logger.d("Un-registered for WiFi Scan results broadcast");
-        }
+        dispatcher.removeScanResultsListener(listener);
     }
 
-    @TargetApi(LOLLIPOP)
-    NetworkCallback networkCallback(final String networkSSID,
-                                    final NetworkStateChangeListener listener) {
-        return new NetworkCallback() {
-            @Override
-            public void onAvailable(Network network) {
-                NetworkInfo networkInfo = manager.getNetworkInfo(network);
-                logger.i("Network is Available. Network Info: " + networkInfo);
-
-                if (WifiHelper.areEqual(networkInfo.getExtraInfo(), networkSSID)) {
-                    manager.unregisterNetworkCallback(this);
-                    networkCallback = null;
-                    bindToRequiredNetwork(network);
-                    logger.i(format("Bound application to use %s network", networkSSID));
-                    listener.onNetworkBound();
-                }
-            }
-        };
+    void requestScan(@NonNull ScanResultsListener waiter, long maxWaitMillis) {
+        dispatcher.requestScan(waiter, maxWaitMillis);
+    }
+
+    void setNetworkStateCoalescingWindow(long windowMillis) {
+        dispatcher.setCoalescingWindow(windowMillis);
+    }
+
+    void setScanBudget(int scans, long periodMillis) {
+        dispatcher.setScanBudget(scans, periodMillis);
+    }
+
+    List<ScanResult> getFreshScanResults(long maxAgeMillis) {
+        return dispatcher.getFreshScanResults(maxAgeMillis);
+    }
+
+    void setEventDeliveryScheduler(Scheduler scheduler) {
+        dispatcher.setDeliveryScheduler(scheduler);
+    }
+
+    void deliverEventsOnBackgroundThread() {
+        dispatcher.deliverOnBackgroundThread();
     }
 
     @TargetApi(LOLLIPOP)
     void bindToRequiredNetwork(Network network) {
-        if (SDK_INT >= M) {
-            manager.bindProcessToNetwork(network);
-        } else {
-            ConnectivityManager.setProcessDefaultNetwork(network);
-        }
+        backend.bindProcessToNetwork(network);
     }
 
     @TargetApi(LOLLIPOP)
     void clearNetworkBinding() {
-        if (networkCallback != null) {
-            manager.unregisterNetworkCallback(networkCallback);
-            logger.d("Un-registering for network available callback");
-        }
+        cancelPendingBinding();
 
         if (SDK_INT < LOLLIPOP || !isBoundToNetwork()) {
             logger.d("Not bound to any network, would not attempt to clear binding");
@@ -175,11 +145,7 @@ class WifiUtil {
 
     @TargetApi(LOLLIPOP)
     Network getBoundNetworkForProcess() {
-        if (SDK_INT >= M) {
-            return manager.getBoundNetworkForProcess();
-        } else {
-            return ConnectivityManager.getProcessDefaultNetwork();
-        }
+        return backend.getBoundNetworkForProcess();
     }
 
     @TargetApi(LOLLIPOP)
@@ -188,43 +154,11 @@ class WifiUtil {
             return;
         }
 
-        if (SDK_INT >= M) {
-            Network defaultNetwork = manager.getBoundNetworkForProcess();
-            manager.reportNetworkConnectivity(defaultNetwork, true);
-        } else {
-            Network defaultNetwork = ConnectivityManager.getProcessDefaultNetwork();
-            manager.reportBadNetwork(defaultNetwork);
-        }
-    }
-
-    private void informNetworkStateChanged(NetworkInfo networkInfo) {
-        if (networkStateListener == null) {
-            logger.e("Listener for NetworkStateChange is null, did you forget calling removeNetworkStateChangeListener()?");
-            return;
-        }
-
-        if (networkInfo.isConnected()) {
-            networkStateListener.onNetworkConnected();
-        }
-    }
-
-    private void informWifiStateChanged(int wifiState, boolean initialStickyBroadcast) {
-        if (wifiStateListener == null) {
-            logger.e("Listener for WifiStateChange is null, did you forget calling removeWifiStateChangeListener()?");
-            return;
-        }
-
-        if (wifiState == WIFI_STATE_ENABLED) {
-            wifiStateListener.onWifiEnabled(initialStickyBroadcast);
-        } else if (wifiState == WIFI_STATE_DISABLED) {
-            wifiStateListener.onWifiDisabled(initialStickyBroadcast);
-        }
+        backend.reportNetworkConnectivity(backend.getBoundNetworkForProcess());
     }
 
     public boolean isActiveNetworkWifi() {
-        NetworkInfo activeNetworkInfo = manager.getActiveNetworkInfo();
-        return activeNetworkInfo != null &&
-                activeNetworkInfo.getType() == ConnectivityManager.TYPE_WIFI;
+        return backend.isActiveNetworkWifi();
     }
 
     interface WifiStateChangeListener {
@@ -234,7 +168,10 @@ class WifiUtil {
     }
 
     interface NetworkStateChangeListener {
-        void onNetworkConnected();
+        /**
+         * @param SSID of the network connected to as reported by the broadcast, null when not reported
+         */
+        void onNetworkConnected(String SSID);
 
         void onNetworkBound();
     }
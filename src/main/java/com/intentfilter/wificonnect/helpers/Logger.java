@@ -4,6 +4,8 @@ import android.util.Log;
 
 import com.intentfilter.wificonnect.BuildConfig;
 
+import static java.lang.String.format;
+
 public class Logger {
     private String LOG_TAG;
 
@@ -15,29 +17,95 @@ public class Logger {
         return new Logger(clazz);
     }
 
+    public boolean isDebugEnabled() {
+        return BuildConfig.DEBUG;
+    }
+
     public void d(String message) {
         if (BuildConfig.DEBUG) {
             Log.d(LOG_TAG, message);
         }
     }
 
+    /**
+     * Wins over {@link #d(String, Object)} for a Throwable argument, so the message isn't a format.
+     */
     public void d(String message, Throwable throwable) {
         if (BuildConfig.DEBUG) {
             Log.d(LOG_TAG, message, throwable);
         }
     }
 
+    public void d(String messageFormat, Object arg) {
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, format(messageFormat, arg));
+        }
+    }
+
+    public void d(String messageFormat, long arg) {
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, format(messageFormat, arg));
+        }
+    }
+
+    public void d(String messageFormat, Object arg1, Object arg2) {
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, format(messageFormat, arg1, arg2));
+        }
+    }
+
+    public void d(String messageFormat, long arg1, long arg2) {
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, format(messageFormat, arg1, arg2));
+        }
+    }
+
     public void i(String message) {
         if (BuildConfig.DEBUG) {
             Log.i(LOG_TAG, message);
         }
     }
 
+    public void i(String messageFormat, Object arg) {
+        if (BuildConfig.DEBUG) {
+            Log.i(LOG_TAG, format(messageFormat, arg));
+        }
+    }
+
+    public void i(String messageFormat, long arg) {
+        if (BuildConfig.DEBUG) {
+            Log.i(LOG_TAG, format(messageFormat, arg));
+        }
+    }
+
+    public void i(String messageFormat, Object arg1, Object arg2) {
+        if (BuildConfig.DEBUG) {
+            Log.i(LOG_TAG, format(messageFormat, arg1, arg2));
+        }
+    }
+
+    public void i(String messageFormat, long arg1, long arg2) {
+        if (BuildConfig.DEBUG) {
+            Log.i(LOG_TAG, format(messageFormat, arg1, arg2));
+        }
+    }
+
     public void e(String message) {
         Log.e(LOG_TAG, message);
     }
 
+    /**
+     * Wins over {@link #e(String, Object)} for a Throwable argument, so the message isn't a format.
+     */
     public void e(String message, Throwable throwable) {
         Log.e(LOG_TAG, message, throwable);
     }
-}
\ No newline at end of file
+
+    public void e(String messageFormat, Object arg) {
+        Log.e(LOG_TAG, format(messageFormat, arg));
+    }
+
+    public void e(String messageFormat, long arg) {
+        Log.e(LOG_TAG, format(messageFormat, arg));
+    }
+}
@@ -3,16 +3,49 @@ package com.intentfilter.wificonnect.helpers;
 import android.support.annotation.NonNull;
 
 public class StringUtil {
+    private static final char QUOTE = '"';
+
     @NonNull
     public static String trimQuotes(String str) {
         if (!isEmpty(str)) {
-            return str.replaceAll("^\"*", "").replaceAll("\"*$", "");
+            return str.substring(quotedStart(str), quotedEnd(str));
         }
 
         return str;
     }
 
+    public static boolean equalsIgnoringQuotes(String str, String anotherStr) {
+        if (str == null || anotherStr == null) {
+            return str == anotherStr;
+        }
+
+        int start = quotedStart(str);
+        int length = quotedEnd(str) - start;
+        int anotherStart = quotedStart(anotherStr);
+        int anotherLength = quotedEnd(anotherStr) - anotherStart;
+
+        return length == anotherLength && str.regionMatches(start, anotherStr, anotherStart, length);
+    }
+
+    public static int quotedStart(String str) {
+        int start = 0;
+        int length = str.length();
+        while (start < length && str.charAt(start) == QUOTE) {
+            start++;
+        }
+        return start;
+    }
+
+    public static int quotedEnd(String str) {
+        int start = quotedStart(str);
+        int end = str.length();
+        while (end > start && str.charAt(end - 1) == QUOTE) {
+            end--;
+        }
+        return end;
+    }
+
     public static boolean isEmpty(CharSequence str) {
-        return str == null || str.toString().isEmpty();
+        return str == null || str.length() == 0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,64 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.WifiConfiguration;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConfiguredNetworksCacheTest {
+    @Rule
+    public TemporaryFolder filesDir = new TemporaryFolder();
+
+    @Test
+    public void keepsTheLoadedNetworksUntilInvalidated() {
+        SimulatedWifiBackend backend = new SimulatedWifiBackend(filesDir.getRoot()).withConfiguredNetwork("office");
+        ConfiguredNetworksCache cache = ConfiguredNetworksCache.forBackend(backend);
+
+        assertEquals(0, cache.getNetworkId("office"));
+        assertEquals(0, cache.getNetworkId("office"));
+        assertEquals(1, backend.getConfiguredNetworksListed());
+
+        cache.invalidate();
+        cache.getNetworkId("office");
+        assertEquals(2, backend.getConfiguredNetworksListed());
+    }
+
+    @Test
+    public void dropsNetworksLoadedWhileTheyChanged() {
+        InvalidatingBackend backend = new InvalidatingBackend(filesDir.getRoot());
+        backend.withConfiguredNetwork("office");
+        ConfiguredNetworksCache cache = ConfiguredNetworksCache.forBackend(backend);
+        backend.cache = cache;
+
+        assertEquals(0, cache.getNetworkId("office"));
+        backend.cache = null;
+        cache.getNetworkId("office");
+        cache.getNetworkId("office");
+
+        assertEquals(2, backend.getConfiguredNetworksListed());
+    }
+
+    // Invalidates the cache while it's loading, like a configured networks change arriving in the meantime
+    private static class InvalidatingBackend extends SimulatedWifiBackend {
+        private ConfiguredNetworksCache cache;
+
+        InvalidatingBackend(File filesDir) {
+            super(filesDir);
+        }
+
+        @Override
+        public List<WifiConfiguration> getConfiguredNetworks() {
+            List<WifiConfiguration> configuredNetworks = super.getConfiguredNetworks();
+            if (cache != null) {
+                cache.invalidate();
+            }
+            return configuredNetworks;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.intentfilter.wificonnect;
+
+import com.intentfilter.wificonnect.WifiConnectionManager.ConnectionStateChangedListener;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs thousands of connection requests against a simulated population of APs, some unreachable and some
+ * broadcasts dropped, to catch throughput and time-to-connect regressions of the connection flow.
+ */
+public class ConnectionLoadTest {
+    private static final int CYCLES = 2000;
+    private static final int ACCESS_POINTS = 200;
+    private static final int WANTED_SSIDS = 3;
+    private static final long STEP_MILLIS = 100;
+    // Far below what a laptop does, only an order of magnitude regression should trip it on a slow CI machine
+    private static final int MIN_CYCLES_PER_SECOND = 100;
+    private static final ConnectionPolicy POLICY = new ConnectionPolicy(WANTED_SSIDS, 5000, 30000);
+
+    @Rule
+    public TemporaryFolder filesDir = new TemporaryFolder();
+
+    @Test
+    public void connectsThousandsOfTimesPerSecondWithinTheLatencyBounds() {
+        Random random = new Random(42);
+        SimulatedWifiBackend backend = new SimulatedWifiBackend(filesDir.getRoot())
+                .withAccessPoints("ap-", ACCESS_POINTS, 0.9, random)
+                .withDroppedBroadcasts(0.02, random);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        manager.setConnectionPolicy(POLICY);
+
+        long[] latencies = new long[CYCLES];
+        int connected = 0;
+        long startedAt = System.nanoTime();
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            CompletionListener listener = new CompletionListener(backend.loop);
+            long requestedAt = backend.loop.elapsedRealtime();
+            manager.connectToAvailableSSID(wantedSSIDs(random), listener);
+            while (listener.completedAt < 0) {
+                if (backend.loop.elapsedRealtime() - requestedAt > POLICY.getTotalTimeoutMillis()) {
+                    fail("Cycle " + cycle + " didn't complete within the total timeout");
+                }
+                backend.loop.advanceBy(STEP_MILLIS);
+            }
+            latencies[cycle] = listener.completedAt - requestedAt;
+            if (listener.established) {
+                connected++;
+            }
+        }
+        double cyclesPerSecond = CYCLES * 1e9 / (System.nanoTime() - startedAt);
+
+        Arrays.sort(latencies);
+        long p50 = latencies[CYCLES / 2];
+        long p99 = latencies[CYCLES * 99 / 100];
+        System.out.println(String.format(Locale.US, "%d cycles, %d connected, %.0f cycles/s, p50 %dms, p99 %dms",
+                CYCLES, connected, cyclesPerSecond, p50, p99));
+
+        assertTrue("Connected " + connected, connected >= CYCLES * 9 / 10);
+        assertTrue("Throughput " + cyclesPerSecond, cyclesPerSecond >= MIN_CYCLES_PER_SECOND);
+        assertTrue("p50 " + p50, p50 <= SimulatedWifiBackend.DEFAULT_SCAN_DELAY_MILLIS
+                + SimulatedWifiBackend.DEFAULT_ASSOCIATION_DELAY_MILLIS + STEP_MILLIS);
+        assertTrue("p99 " + p99, p99 <= POLICY.getTotalTimeoutMillis());
+    }
+
+    private static List<String> wantedSSIDs(Random random) {
+        List<String> SSIDs = new ArrayList<>(WANTED_SSIDS);
+        for (int i = 0; i < WANTED_SSIDS; i++) {
+            SSIDs.add("ap-" + random.nextInt(ACCESS_POINTS));
+        }
+        return SSIDs;
+    }
+
+    private static class CompletionListener implements ConnectionStateChangedListener {
+        private final SimulatedLoop loop;
+        private long completedAt = -1;
+        private boolean established;
+
+        CompletionListener(SimulatedLoop loop) {
+            this.loop = loop;
+        }
+
+        @Override
+        public void onConnectionEstablished() {
+            established = true;
+            completedAt = loop.elapsedRealtime();
+        }
+
+        @Override
+        public void onConnectionError(String reason) {
+            completedAt = loop.elapsedRealtime();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.intentfilter.wificonnect;
+
+import android.net.Network;
+
+import com.intentfilter.wificonnect.WifiConnectionManager.ValidationListener;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.SocketFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Probes a stand-in HTTP server on the loopback interface.
+ */
+public class ConnectivityValidatorTest {
+    private static final int PROBE_TIMEOUT_MILLIS = 2000;
+    private static final long CACHE_TTL_MILLIS = 60 * 1000;
+
+    @Rule
+    public TemporaryFolder filesDir = new TemporaryFolder();
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private SimulatedWifiBackend backend;
+    private ConnectivityValidator validator;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/generate_204", respondWith(204, null));
+        server.createContext("/portal", respondWith(302, "http://portal.example/login"));
+        server.createContext("/error", respondWith(503, null));
+        server.start();
+        backend = new SimulatedWifiBackend(filesDir.getRoot()).withWifiEnabled().withAccessPoint("office", -50, true)
+                .withConnection("office");
+        validator = new ConnectivityValidator(backend);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void validatesWhenTheServerAnswersWithNoContent() {
+        validator.setPolicy(policy(ConnectivityProbe.http(url("/generate_204"))));
+
+        assertEquals(ValidationResult.VALIDATED, validator.validate(ProbeTransport.DEFAULT, null));
+    }
+
+    @Test
+    public void reportsACaptivePortalWhenTheProbeIsRedirected() {
+        validator.setPolicy(policy(ConnectivityProbe.http(url("/portal"))));
+
+        assertEquals(ValidationResult.CAPTIVE_PORTAL, validator.validate(ProbeTransport.DEFAULT, null));
+    }
+
+    @Test
+    public void validatesWhenAnyProbeSucceeds() {
+        validator.setPolicy(new ValidationPolicy(Arrays.asList(ConnectivityProbe.http(url("/error")),
+                ConnectivityProbe.tcp("127.0.0.1", server.getAddress().getPort())), PROBE_TIMEOUT_MILLIS,
+                CACHE_TTL_MILLIS));
+
+        assertEquals(ValidationResult.VALIDATED, validator.validate(ProbeTransport.DEFAULT, null));
+    }
+
+    @Test
+    public void reportsNoConnectivityWhenNothingAnswers() throws IOException {
+        validator.setPolicy(policy(ConnectivityProbe.tcp("127.0.0.1", closedPort())));
+
+        assertEquals(ValidationResult.NO_CONNECTIVITY, validator.validate(ProbeTransport.DEFAULT, null));
+    }
+
+    @Test
+    public void cachesResultsProbedOverTheBoundWifiNetwork() throws InterruptedException {
+        backend.withBoundNetwork(loopbackNetwork(), true);
+        validator.setPolicy(policy(ConnectivityProbe.http(url("/generate_204"))));
+
+        assertEquals(ValidationResult.VALIDATED, validateBoundNetwork());
+        assertEquals(ValidationResult.VALIDATED, validateBoundNetwork());
+
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void probesAgainWhenNotBoundToAWifiNetwork() throws InterruptedException {
+        validator.setPolicy(policy(ConnectivityProbe.http(url("/generate_204"))));
+
+        validateBoundNetwork();
+        validateBoundNetwork();
+        backend.withBoundNetwork(loopbackNetwork(), false);
+        validateBoundNetwork();
+        validateBoundNetwork();
+
+        assertEquals(4, requests.get());
+    }
+
+    private ValidationResult validateBoundNetwork() throws InterruptedException {
+        final BlockingQueue<ValidationResult> results = new ArrayBlockingQueue<>(1);
+        validator.validateBoundNetwork(new ImmediateScheduler(), new ValidationListener() {
+            @Override
+            public void onValidationFinished(ValidationResult result) {
+                results.add(result);
+            }
+        });
+        return results.poll(4 * PROBE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static ValidationPolicy policy(ConnectivityProbe probe) {
+        return new ValidationPolicy(Collections.singletonList(probe), PROBE_TIMEOUT_MILLIS, CACHE_TTL_MILLIS);
+    }
+
+    private static int closedPort() throws IOException {
+        ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        int port = socket.getLocalPort();
+        socket.close();
+        return port;
+    }
+
+    private HttpHandler respondWith(final int status, final String location) {
+        return new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                if (location != null) {
+                    exchange.getResponseHeaders().add("Location", location);
+                }
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+            }
+        };
+    }
+
+    // A Network whose connections go out over the JVM's own network stack
+    private static Network loopbackNetwork() {
+        try {
+            Network network = mock(Network.class);
+            when(network.openConnection(any(URL.class))).thenAnswer(new Answer<URLConnection>() {
+                @Override
+                public URLConnection answer(InvocationOnMock invocation) throws IOException {
+                    return ((URL) invocation.getArguments()[0]).openConnection();
+                }
+            });
+            when(network.getSocketFactory()).thenReturn(SocketFactory.getDefault());
+            when(network.getAllByName(anyString())).thenAnswer(new Answer<InetAddress[]>() {
+                @Override
+                public InetAddress[] answer(InvocationOnMock invocation) throws IOException {
+                    return InetAddress.getAllByName((String) invocation.getArguments()[0]);
+                }
+            });
+            return network;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static class ImmediateScheduler implements Scheduler {
+        @Override
+        public void post(Runnable runnable) {
+            runnable.run();
+        }
+
+        @Override
+        public void postDelayed(Runnable runnable, long delayMillis) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void postDelayed(Runnable runnable, Object token, long delayMillis) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable) {
+        }
+
+        @Override
+        public void removeCallbacksAndMessages(Object token) {
+        }
+
+        @Override
+        public void quit() {
+        }
+    }
+}
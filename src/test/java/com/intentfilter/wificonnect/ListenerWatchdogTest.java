@@ -0,0 +1,128 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+import static com.intentfilter.wificonnect.ListenerWatchdog.SWEEP_INTERVAL_MILLIS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ListenerWatchdogTest {
+    @Rule
+    public TemporaryFolder filesDir = new TemporaryFolder();
+
+    private SimulatedWifiBackend backend;
+    private WifiUtil wifiUtil;
+    private ListenerDiagnostics diagnostics;
+    private long idleListenersBefore;
+    private long collectedListenersBefore;
+    private long orphanedReceiversBefore;
+
+    @Before
+    public void setUp() {
+        backend = new SimulatedWifiBackend(filesDir.getRoot()).withWifiEnabled().withAccessPoint("office", -50, true);
+        wifiUtil = new WifiUtil(backend);
+        diagnostics = WifiConnectionManager.getListenerDiagnostics();
+        idleListenersBefore = diagnostics.getIdleListeners();
+        collectedListenersBefore = diagnostics.getCollectedListeners();
+        orphanedReceiversBefore = diagnostics.getOrphanedReceivers();
+    }
+
+    @Test
+    public void keepsListenersWithoutIdleTimeoutRegistered() {
+        CountingListener listener = new CountingListener();
+        wifiUtil.setWifiScanResultsListener(listener);
+
+        backend.loop.advanceBy(5 * SWEEP_INTERVAL_MILLIS);
+        wifiUtil.requestScan(listener, 4000);
+        backend.loop.advanceBy(SWEEP_INTERVAL_MILLIS);
+
+        assertEquals(1, listener.scanResultsReceived);
+        assertEquals(1, backend.getEventListenerCount());
+    }
+
+    @Test
+    public void dropsListenersIdleForTheirTimeoutAndUnregistersTheirReceiver() {
+        CountingListener listener = new CountingListener();
+        wifiUtil.setListenerPolicy(new ListenerPolicy(false, 90 * 1000));
+        wifiUtil.setWifiScanResultsListener(listener);
+
+        backend.loop.advanceBy(70 * 1000);
+        wifiUtil.requestScan(listener, 4000);
+        // Results at 72s keep it active through the sweep at 120s, it's idle by the one at 180s
+        backend.loop.advanceBy(2 * SWEEP_INTERVAL_MILLIS - 70 * 1000);
+        assertEquals(1, backend.getEventListenerCount());
+        backend.loop.advanceBy(SWEEP_INTERVAL_MILLIS);
+
+        assertEquals(1, listener.scanResultsReceived);
+        assertEquals(0, backend.getEventListenerCount());
+        assertEquals(1, diagnostics.getIdleListeners() - idleListenersBefore);
+        assertEquals(1, diagnostics.getOrphanedReceivers() - orphanedReceiversBefore);
+    }
+
+    @Test
+    public void dropsWeaklyHeldListenersOnceCollected() {
+        wifiUtil.setListenerPolicy(new ListenerPolicy(true, ListenerPolicy.NO_IDLE_TIMEOUT));
+        WeakReference<CountingListener> reference = registerUnreferencedListener();
+        while (reference.get() != null) {
+            System.gc();
+        }
+
+        backend.loop.advanceBy(SWEEP_INTERVAL_MILLIS);
+
+        assertEquals(0, backend.getEventListenerCount());
+        assertEquals(1, diagnostics.getCollectedListeners() - collectedListenersBefore);
+    }
+
+    @Test
+    public void idleTimeoutCountsFromTheLastEvent() {
+        SimulatedLoop loop = new SimulatedLoop();
+        ListenerRegistration<Object> registration = new ListenerRegistration<>(new Object(),
+                new ListenerPolicy(false, 1000), loop);
+
+        loop.advanceBy(999);
+        registration.touch();
+        loop.advanceBy(999);
+        assertFalse(registration.isIdle(loop.elapsedRealtime()));
+        loop.advanceBy(1);
+
+        assertTrue(registration.isIdle(loop.elapsedRealtime()));
+    }
+
+    @Test
+    public void weakRegistrationReturnsNullOnceCollected() {
+        ListenerRegistration<Object> registration = new ListenerRegistration<>(new Object(),
+                new ListenerPolicy(true, ListenerPolicy.NO_IDLE_TIMEOUT), new SimulatedLoop());
+        while (registration.get() != null) {
+            System.gc();
+        }
+
+        assertNull(registration.get());
+        assertFalse(registration.isIdle(Long.MAX_VALUE));
+    }
+
+    private WeakReference<CountingListener> registerUnreferencedListener() {
+        CountingListener listener = new CountingListener();
+        wifiUtil.setWifiScanResultsListener(listener);
+        assertEquals(1, backend.getEventListenerCount());
+        return new WeakReference<>(listener);
+    }
+
+    private static class CountingListener implements ScanResultsListener {
+        private int scanResultsReceived;
+
+        @Override
+        public void onScanResultsAvailable(List<ScanResult> scanResults) {
+            scanResultsReceived++;
+        }
+    }
+}
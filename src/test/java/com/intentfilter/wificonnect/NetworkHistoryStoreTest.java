@@ -0,0 +1,73 @@
+package com.intentfilter.wificonnect;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class NetworkHistoryStoreTest {
+    @Rule
+    public TemporaryFolder filesDir = new TemporaryFolder();
+
+    @Test
+    public void ranksSSIDsThatConnectedBeforeFirst() {
+        SimulatedWifiBackend backend = new SimulatedWifiBackend(filesDir.getRoot());
+        NetworkHistoryStore store = NetworkHistoryStore.forBackend(backend);
+        backend.loop.runDueTasks();
+
+        store.recordSuccess("lobby", "02:00:00:00:00:01", 1, 3000);
+        store.recordFailure("office");
+
+        assertEquals(Arrays.asList("lobby", "office", "lab"), store.rank(Arrays.asList("office", "lab", "lobby")));
+    }
+
+    @Test
+    public void keepsTheLoadedHistoryOfSSIDsRecordedWhileLoading() {
+        SimulatedWifiBackend previousRun = new SimulatedWifiBackend(filesDir.getRoot());
+        NetworkHistoryStore previousStore = NetworkHistoryStore.forBackend(previousRun);
+        previousRun.loop.runDueTasks();
+        previousStore.recordSuccess("lobby", "02:00:00:00:00:01", 1, 3000);
+        previousRun.loop.advanceBy(NetworkHistoryStore.FLUSH_DELAY_MILLIS);
+
+        SimulatedWifiBackend backend = new SimulatedWifiBackend(filesDir.getRoot());
+        NetworkHistoryStore store = NetworkHistoryStore.forBackend(backend);
+        store.recordFailure("lobby");
+        backend.loop.runDueTasks();
+
+        assertEquals(Arrays.asList("lobby", "office"), store.rank(Arrays.asList("office", "lobby")));
+    }
+
+    @Test
+    public void prefersTheAccessPointLastConnectedToInAnEarlierRun() {
+        SimulatedWifiBackend previousRun = new SimulatedWifiBackend(filesDir.getRoot());
+        NetworkHistoryStore previousStore = NetworkHistoryStore.forBackend(previousRun);
+        previousRun.loop.runDueTasks();
+        previousStore.recordSuccess("lobby", "02:00:00:00:00:01", 1, 3000);
+        previousRun.loop.advanceBy(NetworkHistoryStore.FLUSH_DELAY_MILLIS);
+
+        SimulatedWifiBackend backend = new SimulatedWifiBackend(filesDir.getRoot());
+        NetworkHistoryStore store = NetworkHistoryStore.forBackend(backend);
+        backend.loop.runDueTasks();
+
+        SignalScorer signalScorer = SignalScorer.forBackend(backend);
+        double hysteresisMargin = signalScorer.getPolicy().getHysteresisMargin();
+        assertEquals(-70 + hysteresisMargin,
+                signalScorer.score(TestScanResults.scanResult("lobby", "02:00:00:00:00:01", -70)), 0);
+        assertEquals(1, store.getNetworkId("lobby"));
+    }
+
+    @Test
+    public void forgetsTheNetworkIdOfAFailedConnection() {
+        SimulatedWifiBackend backend = new SimulatedWifiBackend(filesDir.getRoot());
+        NetworkHistoryStore store = NetworkHistoryStore.forBackend(backend);
+        backend.loop.runDueTasks();
+
+        store.recordSuccess("lobby", "02:00:00:00:00:01", 1, 3000);
+        store.recordFailure("lobby");
+
+        assertEquals(NetworkHistoryStore.Record.UNKNOWN, store.getNetworkId("lobby"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.WifiConfiguration;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class NetworkProvisionerTest {
+    @Rule
+    public TemporaryFolder filesDir = new TemporaryFolder();
+
+    private SimulatedWifiBackend backend;
+    private NetworkProvisioner provisioner;
+
+    @Before
+    public void setUp() {
+        backend = new SimulatedWifiBackend(filesDir.getRoot()).withWifiEnabled();
+        provisioner = new NetworkProvisioner(backend, ConfiguredNetworksCache.forBackend(backend));
+    }
+
+    @Test
+    public void skipsOnlyOpenNetworksThatAreConfiguredIdentically() {
+        backend.addNetwork(openNetwork("guest"));
+        backend.addNetwork(wepNetwork("legacy"));
+        backend.addNetwork(eapNetwork("corp"));
+
+        ProvisioningResult result = provisioner.provision(Arrays.asList(openNetwork("guest"), wepNetwork("legacy"),
+                eapNetwork("corp")));
+
+        assertEquals(1, result.getUnchanged());
+        assertEquals(2, result.getUpdated());
+        assertEquals(2, priorityOf("legacy"));
+        assertEquals(1, priorityOf("corp"));
+    }
+
+    @Test
+    public void addsCopiesAndLeavesTheGivenConfigurationsUntouched() {
+        WifiConfiguration home = openNetwork("home");
+        home.priority = 4;
+        backend.addNetwork(home);
+        WifiConfiguration configuration = wepNetwork("legacy");
+        int networkId = configuration.networkId;
+
+        ProvisioningResult result = provisioner.provision(Collections.singletonList(configuration));
+
+        assertEquals(1, result.getAdded());
+        assertEquals(networkId, configuration.networkId);
+        assertEquals(0, configuration.priority);
+        WifiConfiguration added = backend.getConfiguredNetworks().get(1);
+        assertEquals(5, added.priority);
+        assertEquals("\"legacy-key\"", added.wepKeys[0]);
+    }
+
+    private int priorityOf(String SSID) {
+        List<WifiConfiguration> configured = backend.getConfiguredNetworks();
+        for (WifiConfiguration configuration : configured) {
+            if (WifiHelper.areEqual(SSID, configuration.SSID)) {
+                return configuration.priority;
+            }
+        }
+        throw new AssertionError(SSID + " isn't configured");
+    }
+
+    // The fields are assigned rather than modified, WifiConfiguration's constructor doesn't set them in unit tests
+    private static WifiConfiguration openNetwork(String SSID) {
+        return network(SSID, WifiConfiguration.KeyMgmt.NONE);
+    }
+
+    private static WifiConfiguration wepNetwork(String SSID) {
+        WifiConfiguration configuration = openNetwork(SSID);
+        configuration.wepKeys = new String[]{WifiHelper.formatSSID(SSID + "-key"), null, null, null};
+        return configuration;
+    }
+
+    private static WifiConfiguration eapNetwork(String SSID) {
+        return network(SSID, WifiConfiguration.KeyMgmt.WPA_EAP);
+    }
+
+    private static WifiConfiguration network(String SSID, int keyManagement) {
+        WifiConfiguration configuration = new WifiConfiguration();
+        configuration.SSID = WifiHelper.formatSSID(SSID);
+        configuration.allowedKeyManagement = new BitSet();
+        configuration.allowedKeyManagement.set(keyManagement);
+        return configuration;
+    }
+}
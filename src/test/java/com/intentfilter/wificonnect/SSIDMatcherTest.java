@@ -0,0 +1,169 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static com.intentfilter.wificonnect.TestScanResults.scanResult;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SSIDMatcherTest {
+    private static final String[] SSIDS = {"home", "office", "cafe", "store-0001-a", "store-0002-b", "guest", ""};
+
+    @Test
+    public void matchesWantedSSIDsQuotedOrNot() {
+        SSIDMatcher matcher = new SSIDMatcher(Arrays.asList("home", "\"office\""));
+
+        assertTrue(matcher.matches("home"));
+        assertTrue(matcher.matches("\"home\""));
+        assertTrue(matcher.matches("office"));
+        assertTrue(matcher.matches("\"office\""));
+        assertFalse(matcher.matches("Home"));
+        assertFalse(matcher.matches("home2"));
+        assertFalse(matcher.matches(null));
+    }
+
+    @Test
+    public void ignoresNullWantedSSIDs() {
+        SSIDMatcher matcher = new SSIDMatcher(Arrays.asList(null, "home"));
+
+        assertTrue(matcher.matches("home"));
+        assertFalse(matcher.matches(""));
+    }
+
+    @Test
+    public void matchesExactPatterns() {
+        SSIDMatcher matcher = SSIDMatcher.compile(Collections.singletonList(SSIDPattern.exact("\"home\"")));
+
+        assertTrue(matcher.matches("home"));
+        assertTrue(matcher.matches("\"home\""));
+        assertFalse(matcher.matches("hom"));
+        assertFalse(matcher.matches("homes"));
+    }
+
+    @Test
+    public void matchesPrefixPatterns() {
+        SSIDMatcher matcher = SSIDMatcher.compile(Collections.singletonList(SSIDPattern.prefix("store-")));
+
+        assertTrue(matcher.matches("store-"));
+        assertTrue(matcher.matches("\"store-0001\""));
+        assertFalse(matcher.matches("stor"));
+        assertFalse(matcher.matches("my-store-0001"));
+    }
+
+    @Test
+    public void matchesWildcardPatterns() {
+        SSIDMatcher matcher = SSIDMatcher.compile(Arrays.asList(SSIDPattern.wildcard("store-????-*"),
+                SSIDPattern.wildcard("*-guest")));
+
+        assertTrue(matcher.matches("store-0001-a"));
+        assertTrue(matcher.matches("\"store-0001-\""));
+        assertTrue(matcher.matches("cafe-guest"));
+        assertTrue(matcher.matches("-guest"));
+        assertFalse(matcher.matches("store-001-a"));
+        assertFalse(matcher.matches("cafe-guests"));
+    }
+
+    @Test
+    public void wildcardPatternsMatchLikeTheEquivalentRegex() {
+        String[] patterns = {"*", "a*", "*a", "a?b", "*a*b*", "??", "a**b", "*?a"};
+        String[] candidates = {"", "a", "b", "ab", "ba", "aab", "axb", "abab", "bbab", "aaaa", "xyz", "a?b"};
+        for (String pattern : patterns) {
+            SSIDMatcher matcher = SSIDMatcher.compile(Collections.singletonList(SSIDPattern.wildcard(pattern)));
+            Pattern regex = Pattern.compile(pattern.replace("?", ".").replace("*", ".*"));
+            for (String candidate : candidates) {
+                assertEquals(pattern + " on " + candidate, regex.matcher(candidate).matches(),
+                        matcher.matches(candidate));
+            }
+        }
+    }
+
+    @Test
+    public void findsStrongestMatchingScanResult() {
+        ScanResult weakHome = scanResult("home", "00:00:00:00:00:01", -80);
+        ScanResult strongOther = scanResult("neighbour", "00:00:00:00:00:02", -30);
+        ScanResult strongHome = scanResult("\"home\"", "00:00:00:00:00:03", -50);
+        SSIDMatcher matcher = new SSIDMatcher(Collections.singletonList("home"));
+
+        assertSame(strongHome, matcher.findStrongest(Arrays.asList(weakHome, strongOther, strongHome)));
+        assertNull(matcher.findStrongest(Collections.singletonList(strongOther)));
+    }
+
+    @Test
+    public void findsBestScanResultPerSSIDUpToLimit() {
+        List<ScanResult> scanResults = Arrays.asList(
+                scanResult("home", "00:00:00:00:00:01", -70),
+                scanResult("office", "00:00:00:00:00:02", -40),
+                scanResult("home", "00:00:00:00:00:03", -45),
+                scanResult("cafe", "00:00:00:00:00:04", -60),
+                scanResult("guest", "00:00:00:00:00:05", -20));
+        SSIDMatcher matcher = new SSIDMatcher(Arrays.asList("home", "office", "cafe"));
+
+        List<ScanResult> best = matcher.findBest(scanResults, 2, null);
+
+        assertEquals(Arrays.asList(scanResults.get(1), scanResults.get(2)), best);
+        assertTrue(matcher.findBest(scanResults, 0, null).isEmpty());
+    }
+
+    @Test
+    public void findsTheSameSSIDAsTheSortingImplementation() {
+        Random random = new Random(42);
+        for (int round = 0; round < 1000; round++) {
+            List<ScanResult> scanResults = randomScanResults(random);
+            List<String> wanted = randomWantedSSIDs(random);
+
+            ScanResult strongest = new SSIDMatcher(wanted).findStrongest(scanResults);
+
+            assertEquals(sortingFindAvailableSSID(wanted, scanResults), strongest != null ? strongest.SSID : null);
+        }
+    }
+
+    private static List<ScanResult> randomScanResults(Random random) {
+        int count = random.nextInt(12);
+        List<ScanResult> scanResults = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            scanResults.add(scanResult(SSIDS[random.nextInt(SSIDS.length)], "00:00:00:00:00:" + i,
+                    -30 - random.nextInt(10)));
+        }
+        return scanResults;
+    }
+
+    private static List<String> randomWantedSSIDs(Random random) {
+        List<String> wanted = new ArrayList<>();
+        for (String SSID : SSIDS) {
+            if (random.nextInt(3) == 0) {
+                wanted.add(SSID);
+            }
+        }
+        return wanted;
+    }
+
+    // What WifiHelper.findAvailableSSID did before SSIDMatcher: stable sort by level, first wanted SSID wins
+    private static String sortingFindAvailableSSID(List<String> SSIDs, List<ScanResult> scanResults) {
+        List<ScanResult> sorted = new ArrayList<>(scanResults);
+        Collections.sort(sorted, new Comparator<ScanResult>() {
+            @Override
+            public int compare(ScanResult resultOne, ScanResult resultTwo) {
+                return resultTwo.level - resultOne.level;
+            }
+        });
+        for (ScanResult scanResult : sorted) {
+            if (SSIDs.contains(scanResult.SSID)) {
+                return scanResult.SSID;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,90 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+
+import com.intentfilter.wificonnect.ScanScheduler.ScanTimeoutListener;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScanSchedulerTest {
+    private static final ScanPolicy POLICY = new ScanPolicy(0, 4000, 1000, 8000, 3);
+
+    @Rule
+    public TemporaryFolder filesDir = new TemporaryFolder();
+
+    private SimulatedWifiBackend backend;
+    private WifiUtil wifiUtil;
+    private ScanScheduler scheduler;
+    private final int[] timedOutAfterAttempts = {0};
+    private final ScanTimeoutListener timeoutListener = new ScanTimeoutListener() {
+        @Override
+        public void onScanTimedOut(int attempts) {
+            timedOutAfterAttempts[0] = attempts;
+        }
+    };
+    private final ScanResultsListener waiter = new ScanResultsListener() {
+        @Override
+        public void onScanResultsAvailable(List<ScanResult> scanResults) {
+            scheduler.onScanResultsReceived();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        backend = new SimulatedWifiBackend(filesDir.getRoot()).withWifiEnabled().withAccessPoint("office", -50, true);
+    }
+
+    @Test
+    public void retriesWithBackoffAndTimesOutAfterTheLastAttempt() {
+        backend.withoutScanResultsBroadcast();
+        start();
+
+        // Attempts at 0, 4000 + 1000 and 9000 + 2000, the last one times out at 15000
+        backend.loop.advanceBy(14999);
+        assertEquals(3, scheduler.getAttempts());
+        assertEquals(0, timedOutAfterAttempts[0]);
+        backend.loop.advanceBy(1);
+
+        assertEquals(3, timedOutAfterAttempts[0]);
+        assertEquals(3, backend.getScansStarted());
+    }
+
+    @Test
+    public void stopsRetryingOnceResultsArrive() {
+        start();
+
+        backend.loop.advanceBy(30000);
+
+        assertEquals(1, scheduler.getAttempts());
+        assertEquals(1, backend.getScansStarted());
+        assertEquals(backend.getScanDelayMillis(), scheduler.getTimeToResultsMillis());
+        assertEquals(0, timedOutAfterAttempts[0]);
+    }
+
+    @Test
+    public void cancelStopsRetries() {
+        backend.withoutScanResultsBroadcast();
+        start();
+
+        backend.loop.advanceBy(1000);
+        scheduler.cancel();
+        backend.loop.advanceBy(30000);
+
+        assertEquals(1, backend.getScansStarted());
+        assertEquals(0, timedOutAfterAttempts[0]);
+    }
+
+    private void start() {
+        wifiUtil = new WifiUtil(backend);
+        scheduler = new ScanScheduler(wifiUtil, backend.getMainScheduler(), POLICY);
+        wifiUtil.setWifiScanResultsListener(waiter);
+        scheduler.start(waiter, timeoutListener);
+    }
+}
@@ -0,0 +1,132 @@
+package com.intentfilter.wificonnect;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Single threaded event loop on simulated time. Every scheduler and executor made by it runs its tasks on the
+ * thread calling {@link #advanceBy(long)}, in time order, so a whole connection flow runs deterministically.
+ */
+final class SimulatedLoop implements Clock {
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private long now;
+    private long sequence;
+
+    @Override
+    public long elapsedRealtime() {
+        return now;
+    }
+
+    Scheduler newScheduler() {
+        return new LoopScheduler();
+    }
+
+    Executor newExecutor() {
+        final Scheduler scheduler = newScheduler();
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                scheduler.post(command);
+            }
+        };
+    }
+
+    /**
+     * Runs the tasks due within the next {@code millis}, including those they post, and moves time forward.
+     */
+    void advanceBy(long millis) {
+        long target = now + millis;
+        Task task;
+        while ((task = tasks.peek()) != null && task.time <= target) {
+            tasks.poll();
+            now = Math.max(now, task.time);
+            task.runnable.run();
+        }
+        now = target;
+    }
+
+    void runDueTasks() {
+        advanceBy(0);
+    }
+
+    private void post(LoopScheduler owner, Runnable runnable, Object token, long delayMillis) {
+        tasks.add(new Task(owner, runnable, token, now + Math.max(0, delayMillis), sequence++));
+    }
+
+    private void remove(LoopScheduler owner, Runnable runnable, Object token, boolean anyToken) {
+        List<Task> removed = new ArrayList<>();
+        for (Iterator<Task> iterator = tasks.iterator(); iterator.hasNext(); ) {
+            Task task = iterator.next();
+            if (task.owner == owner && (runnable == null || task.runnable == runnable)
+                    && (anyToken || task.token == token)) {
+                removed.add(task);
+            }
+        }
+        tasks.removeAll(removed);
+    }
+
+    private class LoopScheduler implements Scheduler {
+        private boolean quit;
+
+        @Override
+        public void post(Runnable task) {
+            postDelayed(task, null, 0);
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            postDelayed(task, null, delayMillis);
+        }
+
+        @Override
+        public void postDelayed(Runnable task, Object token, long delayMillis) {
+            if (!quit) {
+                SimulatedLoop.this.post(this, task, token, delayMillis);
+            }
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            remove(this, task, null, true);
+        }
+
+        @Override
+        public void removeCallbacksAndMessages(Object token) {
+            // Like Handler, a null token removes everything
+            remove(this, null, token, token == null);
+        }
+
+        @Override
+        public void quit() {
+            quit = true;
+            remove(this, null, null, true);
+        }
+    }
+
+    private static class Task implements Comparable<Task> {
+        private final LoopScheduler owner;
+        private final Runnable runnable;
+        private final Object token;
+        private final long time;
+        private final long sequence;
+
+        Task(LoopScheduler owner, Runnable runnable, Object token, long time, long sequence) {
+            this.owner = owner;
+            this.runnable = runnable;
+            this.token = token;
+            this.time = time;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Task another) {
+            if (time != another.time) {
+                return time < another.time ? -1 : 1;
+            }
+            return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.intentfilter.wificonnect;
+
+import android.net.Network;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiInfo;
+
+import com.intentfilter.wificonnect.helpers.StringUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static android.net.wifi.WifiManager.WIFI_STATE_DISABLED;
+import static android.net.wifi.WifiManager.WIFI_STATE_ENABLED;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * WiFi stack on a {@link SimulatedLoop}. Enabling WiFi, scanning and associating take configurable simulated
+ * times, events are delivered on the main scheduler the way broadcasts are delivered on the main thread.
+ */
+class SimulatedWifiBackend implements WifiBackend {
+    static final long DEFAULT_WIFI_ENABLE_DELAY_MILLIS = 500;
+    static final long DEFAULT_SCAN_DELAY_MILLIS = 2000;
+    static final long DEFAULT_ASSOCIATION_DELAY_MILLIS = 3000;
+    private static final String UNKNOWN_SSID = "<unknown ssid>";
+
+    final SimulatedLoop loop = new SimulatedLoop();
+    private final Scheduler mainScheduler = loop.newScheduler();
+    private final File filesDir;
+    private final Map<EventListener, WifiEvent.Type> eventListeners = new LinkedHashMap<>();
+    private final Set<NetworkListener> networkListeners = new HashSet<>();
+    private final List<ScanResult> scanResults = new ArrayList<>();
+    private final List<WifiConfiguration> configuredNetworks = new ArrayList<>();
+    private final Set<String> reachableSSIDs = new HashSet<>();
+    private final Map<String, String> BSSIDsBySSID = new HashMap<>();
+    private final Map<String, WifiInfo> connectionInfos = new HashMap<>();
+    private long wifiEnableDelayMillis = DEFAULT_WIFI_ENABLE_DELAY_MILLIS;
+    private long scanDelayMillis = DEFAULT_SCAN_DELAY_MILLIS;
+    private long associationDelayMillis = DEFAULT_ASSOCIATION_DELAY_MILLIS;
+    private Random broadcastDrops;
+    private double broadcastDropRate;
+    private boolean wifiEnabled;
+    private boolean scanResultsBroadcast = true;
+    private boolean systemServiceDead;
+    private volatile Network boundNetwork;
+    private volatile Network wifiNetwork;
+    private String connectedSSID;
+    private int nextNetworkId;
+    private int scansStarted;
+    private int configuredNetworksListed;
+
+    SimulatedWifiBackend(File filesDir) {
+        this.filesDir = filesDir;
+    }
+
+    SimulatedWifiBackend withWifiEnabled() {
+        wifiEnabled = true;
+        return this;
+    }
+
+    SimulatedWifiBackend withDelays(long wifiEnableMillis, long scanMillis, long associationMillis) {
+        wifiEnableDelayMillis = wifiEnableMillis;
+        scanDelayMillis = scanMillis;
+        associationDelayMillis = associationMillis;
+        return this;
+    }
+
+    /**
+     * Adds an AP to the scan results, reachable APs are associated with once their network is enabled.
+     */
+    SimulatedWifiBackend withAccessPoint(String SSID, int level, boolean reachable) {
+        int number = scanResults.size() + 1;
+        String BSSID = String.format("02:00:00:%02x:%02x:%02x", number >> 16 & 0xff, number >> 8 & 0xff, number & 0xff);
+        BSSIDsBySSID.put(SSID, BSSID);
+        scanResults.add(TestScanResults.scanResult(SSID, BSSID, level));
+        if (reachable) {
+            reachableSSIDs.add(SSID);
+        }
+        return this;
+    }
+
+    /**
+     * Adds {@code count} APs named {@code prefix} and a number, with levels from -90 to -30 dBm. Each is reachable
+     * with probability {@code reachableRate}, drawn from {@code random} so a seed gives the same population.
+     */
+    SimulatedWifiBackend withAccessPoints(String prefix, int count, double reachableRate, Random random) {
+        for (int i = 0; i < count; i++) {
+            withAccessPoint(prefix + i, -90 + random.nextInt(61), random.nextDouble() < reachableRate);
+        }
+        return this;
+    }
+
+    SimulatedWifiBackend withConfiguredNetwork(String SSID) {
+        WifiConfiguration configuration = new WifiConfiguration();
+        configuration.SSID = WifiHelper.formatSSID(SSID);
+        configuration.networkId = nextNetworkId++;
+        configuredNetworks.add(configuration);
+        return this;
+    }
+
+    SimulatedWifiBackend withConnection(String SSID) {
+        connectedSSID = SSID;
+        return this;
+    }
+
+    SimulatedWifiBackend withoutScanResultsBroadcast() {
+        scanResultsBroadcast = false;
+        return this;
+    }
+
+    /**
+     * Drops each broadcast with probability {@code dropRate}, the way they go missing on some devices. Sticky
+     * broadcasts delivered on registration are never dropped.
+     */
+    SimulatedWifiBackend withDroppedBroadcasts(double dropRate, Random random) {
+        broadcastDropRate = dropRate;
+        broadcastDrops = random;
+        return this;
+    }
+
+    /**
+     * Makes reading scan results and configured networks, and adding networks throw, like calls into a system
+     * service that died.
+     */
+    SimulatedWifiBackend withDeadSystemService() {
+        systemServiceDead = true;
+        return this;
+    }
+
+    /**
+     * Binds the process to the network, which stands for the network of the WiFi connection when {@code wifi}.
+     */
+    SimulatedWifiBackend withBoundNetwork(Network network, boolean wifi) {
+        boundNetwork = network;
+        wifiNetwork = wifi ? network : null;
+        return this;
+    }
+
+    String getConnectedSSID() {
+        return connectedSSID;
+    }
+
+    int getScansStarted() {
+        return scansStarted;
+    }
+
+    int getConfiguredNetworksListed() {
+        return configuredNetworksListed;
+    }
+
+    long getScanDelayMillis() {
+        return scanDelayMillis;
+    }
+
+    int getEventListenerCount() {
+        return eventListeners.size();
+    }
+
+    int getNetworkListenerCount() {
+        return networkListeners.size();
+    }
+
+    @Override
+    public boolean setWifiEnabled(final boolean enabled) {
+        mainScheduler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (wifiEnabled != enabled) {
+                    wifiEnabled = enabled;
+                    emit(WifiEvent.wifiStateChanged(wifiState(), false));
+                }
+            }
+        }, wifiEnableDelayMillis);
+        return true;
+    }
+
+    @Override
+    public boolean isWifiEnabled() {
+        return wifiEnabled;
+    }
+
+    @Override
+    public boolean startScan() {
+        if (!wifiEnabled) {
+            return false;
+        }
+        scansStarted++;
+        if (scanResultsBroadcast) {
+            mainScheduler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    emit(WifiEvent.scanResultsAvailable());
+                }
+            }, scanDelayMillis);
+        }
+        return true;
+    }
+
+    @Override
+    public List<ScanResult> getScanResults() {
+        checkSystemServiceAlive();
+        return wifiEnabled ? new ArrayList<>(scanResults) : new ArrayList<ScanResult>();
+    }
+
+    /**
+     * Like the platform, adding a configuration for an SSID that is configured already replaces that network.
+     */
+    @Override
+    public int addNetwork(WifiConfiguration configuration) {
+        checkSystemServiceAlive();
+        for (int i = 0; i < configuredNetworks.size(); i++) {
+            if (StringUtil.equalsIgnoringQuotes(configuredNetworks.get(i).SSID, configuration.SSID)) {
+                configuration.networkId = configuredNetworks.get(i).networkId;
+                configuredNetworks.set(i, configuration);
+                emit(WifiEvent.configuredNetworksChanged());
+                return configuration.networkId;
+            }
+        }
+        configuration.networkId = nextNetworkId++;
+        configuredNetworks.add(configuration);
+        emit(WifiEvent.configuredNetworksChanged());
+        return configuration.networkId;
+    }
+
+    @Override
+    public int updateNetwork(WifiConfiguration configuration) {
+        for (int i = 0; i < configuredNetworks.size(); i++) {
+            if (configuredNetworks.get(i).networkId == configuration.networkId) {
+                configuredNetworks.set(i, configuration);
+                emit(WifiEvent.configuredNetworksChanged());
+                return configuration.networkId;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean enableNetwork(int networkId, boolean disableOthers) {
+        for (WifiConfiguration configuration : configuredNetworks) {
+            if (configuration.networkId == networkId) {
+                associate(StringUtil.trimQuotes(configuration.SSID));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<WifiConfiguration> getConfiguredNetworks() {
+        checkSystemServiceAlive();
+        configuredNetworksListed++;
+        return new ArrayList<>(configuredNetworks);
+    }
+
+    private void checkSystemServiceAlive() {
+        if (systemServiceDead) {
+            throw new IllegalStateException("WiFi service died");
+        }
+    }
+
+    @Override
+    public WifiInfo getConnectionInfo() {
+        // Mocks are slow to create, there is one per SSID
+        WifiInfo connectionInfo = connectionInfos.get(connectedSSID);
+        if (connectionInfo == null) {
+            connectionInfo = mock(WifiInfo.class);
+            when(connectionInfo.getSSID()).thenReturn(connectedSSID != null ? WifiHelper.formatSSID(connectedSSID)
+                    : UNKNOWN_SSID);
+            when(connectionInfo.getBSSID()).thenReturn(connectedSSID != null ? BSSIDsBySSID.get(connectedSSID)
+                    : null);
+            connectionInfos.put(connectedSSID, connectionInfo);
+        }
+        return connectionInfo;
+    }
+
+    @Override
+    public boolean disconnect() {
+        if (connectedSSID != null) {
+            connectedSSID = null;
+            emit(WifiEvent.networkStateChanged(false, WifiEvent.UNKNOWN, null, false));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isActiveNetworkWifi() {
+        return connectedSSID != null;
+    }
+
+    @Override
+    public void bindProcessToNetwork(Network network) {
+        boundNetwork = network;
+    }
+
+    @Override
+    public Network getBoundNetworkForProcess() {
+        return boundNetwork;
+    }
+
+    @Override
+    public boolean isWifiNetwork(Network network) {
+        return network != null && network == wifiNetwork;
+    }
+
+    @Override
+    public void reportNetworkConnectivity(Network network) {
+    }
+
+    @Override
+    public void registerEventListener(WifiEvent.Type type, final EventListener listener) {
+        eventListeners.put(listener, type);
+        final WifiEvent sticky;
+        if (type == WifiEvent.Type.WIFI_STATE_CHANGED) {
+            sticky = WifiEvent.wifiStateChanged(wifiState(), true);
+        } else if (type == WifiEvent.Type.NETWORK_STATE_CHANGED) {
+            sticky = WifiEvent.networkStateChanged(connectedSSID != null, WifiEvent.UNKNOWN,
+                    connectedSSID != null ? WifiHelper.formatSSID(connectedSSID) : null, true);
+        } else {
+            return;
+        }
+        mainScheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (eventListeners.containsKey(listener)) {
+                    listener.onEvent(sticky);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void unregisterEventListener(EventListener listener) {
+        eventListeners.remove(listener);
+    }
+
+    @Override
+    public void registerNetworkListener(NetworkListener listener) {
+        networkListeners.add(listener);
+    }
+
+    @Override
+    public void unregisterNetworkListener(NetworkListener listener) {
+        networkListeners.remove(listener);
+    }
+
+    @Override
+    public File getFilesDir() {
+        return filesDir;
+    }
+
+    @Override
+    public Clock getClock() {
+        return loop;
+    }
+
+    @Override
+    public Scheduler getMainScheduler() {
+        return mainScheduler;
+    }
+
+    @Override
+    public Scheduler newBackgroundScheduler(String name) {
+        return loop.newScheduler();
+    }
+
+    @Override
+    public Executor newSerialExecutor(String name, int queueCapacity) {
+        return loop.newExecutor();
+    }
+
+    private int wifiState() {
+        return wifiEnabled ? WIFI_STATE_ENABLED : WIFI_STATE_DISABLED;
+    }
+
+    private void associate(final String SSID) {
+        if (!reachableSSIDs.contains(SSID)) {
+            return;
+        }
+        mainScheduler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                connectedSSID = SSID;
+                emit(WifiEvent.networkStateChanged(true, WifiEvent.UNKNOWN, WifiHelper.formatSSID(SSID), false));
+            }
+        }, associationDelayMillis);
+    }
+
+    private void emit(final WifiEvent event) {
+        if (broadcastDrops != null && broadcastDrops.nextDouble() < broadcastDropRate) {
+            return;
+        }
+        mainScheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<EventListener, WifiEvent.Type> entry :
+                        new ArrayList<>(eventListeners.entrySet())) {
+                    if (entry.getValue() == event.type) {
+                        entry.getKey().onEvent(event);
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,30 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * ScanResult has no public constructor in the SDK, its fields are public though.
+ */
+final class TestScanResults {
+    static final int FREQUENCY_2_4_GHZ = 2437;
+    static final int FREQUENCY_5_GHZ = 5180;
+
+    private TestScanResults() {
+    }
+
+    static ScanResult scanResult(String SSID, String BSSID, int level) {
+        return scanResult(SSID, BSSID, level, FREQUENCY_2_4_GHZ);
+    }
+
+    static ScanResult scanResult(String SSID, String BSSID, int level, int frequency) {
+        ScanResult scanResult = mock(ScanResult.class);
+        scanResult.SSID = SSID;
+        scanResult.BSSID = BSSID;
+        scanResult.level = level;
+        scanResult.frequency = frequency;
+        scanResult.capabilities = "[ESS]";
+        return scanResult;
+    }
+}
@@ -0,0 +1,328 @@
+package com.intentfilter.wificonnect;
+
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiConfiguration;
+
+import com.intentfilter.wificonnect.WifiConnectionManager.ConnectionStateChangedListener;
+import com.intentfilter.wificonnect.WifiConnectionManager.ProvisioningListener;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WifiConnectionManagerTest {
+    private static final long FLOW_MILLIS = 20 * 1000;
+    private static final String SERVICE_DIED = "java.lang.IllegalStateException: WiFi service died";
+
+    @Rule
+    public TemporaryFolder filesDir = new TemporaryFolder();
+
+    private SimulatedWifiBackend backend;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() {
+        backend = new SimulatedWifiBackend(filesDir.getRoot());
+        listener = new RecordingListener();
+    }
+
+    @Test
+    public void enablesWifiScansAndConnectsToTheStrongestAvailableSSID() {
+        backend.withAccessPoint("office", -50, true).withAccessPoint("lobby", -80, true);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+
+        manager.connectToAvailableSSID(Arrays.asList("lobby", "office"), listener);
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        assertTrue(listener.established);
+        assertNull(listener.error);
+        assertEquals("office", backend.getConnectedSSID());
+        assertEquals(ConnectionState.CONNECTED, manager.getConnectionState());
+        assertEquals(1, backend.getScansStarted());
+    }
+
+    @Test
+    public void triesTheNextCandidateWhenAnAttemptTimesOut() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, false).withAccessPoint("lobby", -80, true);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        manager.setConnectionPolicy(new ConnectionPolicy(3, 5000, 30000));
+        ConnectionMetrics metrics = WifiConnectionManager.getConnectionMetrics();
+        long attemptsTimedOut = metrics.getAttemptFailures(ConnectionFailureReason.ATTEMPT_TIMED_OUT);
+        long requestsTimedOut = metrics.getFailures(ConnectionFailureReason.ATTEMPT_TIMED_OUT);
+
+        manager.connectToAvailableSSID(Arrays.asList("office", "lobby"), listener);
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        assertTrue(listener.established);
+        assertEquals("lobby", backend.getConnectedSSID());
+        assertEquals(attemptsTimedOut + 1, metrics.getAttemptFailures(ConnectionFailureReason.ATTEMPT_TIMED_OUT));
+        assertEquals(requestsTimedOut, metrics.getFailures(ConnectionFailureReason.ATTEMPT_TIMED_OUT));
+    }
+
+    @Test
+    public void failsWhenNoCandidateConnects() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, false).withAccessPoint("lobby", -80, false);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        manager.setConnectionPolicy(new ConnectionPolicy(3, 5000, 30000));
+
+        manager.connectToAvailableSSID(Arrays.asList("office", "lobby"), listener);
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        assertFalse(listener.established);
+        assertEquals("Couldn't connect to any of 2 available SSIDs", listener.error);
+        assertEquals(ConnectionState.FAILED, manager.getConnectionState());
+    }
+
+    @Test
+    public void failsWhenNoScannedSSIDMatches() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, true);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+
+        manager.connectToAvailableSSID("guest", listener);
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        assertEquals("Couldn't find SSID in which we are interested", listener.error);
+        assertNull(backend.getConnectedSSID());
+    }
+
+    @Test
+    public void failsWithinTheTotalTimeoutWhenScanResultsNeverArrive() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, true).withoutScanResultsBroadcast();
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        manager.setConnectionPolicy(new ConnectionPolicy(3, 5000, 10000));
+
+        manager.connectToAvailableSSID("office", listener);
+        backend.loop.advanceBy(9999);
+        assertNull(listener.error);
+        backend.loop.advanceBy(1);
+
+        assertEquals("Couldn't connect within 10000ms", listener.error);
+        assertEquals(ConnectionState.FAILED, manager.getConnectionState());
+    }
+
+    @Test
+    public void reconnectsWithoutScanningWhenAlreadyConnected() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, true).withConnection("office");
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        manager.setFastReconnectEnabled(true);
+
+        manager.connectToAvailableSSID("office", listener);
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        assertTrue(listener.established);
+        assertEquals(0, backend.getScansStarted());
+    }
+
+    @Test
+    public void fastReconnectEnablesTheNetworkIdFromTheHistoryWithoutListingConfiguredNetworks() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, true);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        manager.connectToAvailableSSID("office", new RecordingListener());
+        backend.loop.advanceBy(FLOW_MILLIS);
+        backend.disconnect();
+        int configuredNetworksListed = backend.getConfiguredNetworksListed();
+
+        manager.setFastReconnectEnabled(true);
+        manager.connectToAvailableSSID("office", listener);
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        assertTrue(listener.established);
+        assertEquals(1, backend.getScansStarted());
+        assertEquals(configuredNetworksListed, backend.getConfiguredNetworksListed());
+    }
+
+    @Test
+    public void newerRequestSupersedesTheOlderOne() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, true).withAccessPoint("lobby", -60, true);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+
+        WifiOperation<Void> first = manager.connectToAvailableSSIDAsync(Collections.singletonList("office"), 0);
+        backend.loop.runDueTasks();
+        manager.connectToAvailableSSID("lobby", listener);
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        assertTrue(first.isCancelled());
+        assertTrue(listener.established);
+        assertEquals("lobby", backend.getConnectedSSID());
+    }
+
+    @Test
+    public void ranksByHistoryBeforeCappingTheCandidates() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, true).withAccessPoint("lobby", -80, true);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        manager.setConnectionPolicy(new ConnectionPolicy(1, 5000, 30000));
+        manager.connectToAvailableSSID("lobby", new RecordingListener());
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        manager.connectToAvailableSSID(Arrays.asList("office", "lobby"), listener);
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        assertTrue(listener.established);
+        assertEquals("lobby", backend.getConnectedSSID());
+    }
+
+    @Test
+    public void favoursOnlyTheAccessPointLastConnectedTo() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, false).withAccessPoint("lobby", -70, true);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        SignalScorer signalScorer = SignalScorer.forBackend(backend);
+
+        manager.connectToAvailableSSID("office", listener);
+        backend.loop.advanceBy(FLOW_MILLIS);
+        assertEquals(-50, signalScorer.score(TestScanResults.scanResult("office", "02:00:00:00:00:01", -50)), 0);
+
+        manager.connectToAvailableSSID("lobby", listener);
+        backend.loop.advanceBy(FLOW_MILLIS);
+        double hysteresisMargin = manager.getScoringPolicy().getHysteresisMargin();
+        assertEquals(-70 + hysteresisMargin,
+                signalScorer.score(TestScanResults.scanResult("lobby", "02:00:00:00:00:02", -70)), 0);
+    }
+
+    @Test
+    public void cancellingTheOperationAbortsTheRequestAndUnregistersItsListeners() {
+        backend.withAccessPoint("office", -50, true);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+
+        WifiOperation<Void> operation = manager.connectToAvailableSSIDAsync(Collections.singletonList("office"), 0);
+        backend.loop.runDueTasks();
+        operation.cancel(false);
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        assertEquals(ConnectionState.ABORTED, manager.getConnectionState());
+        assertNull(backend.getConnectedSSID());
+        backend.loop.advanceBy(ListenerWatchdog.SWEEP_INTERVAL_MILLIS);
+        assertEquals(0, backend.getEventListenerCount());
+    }
+
+    @Test
+    public void answersFromRecentScanResultsOffTheCallingThread() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, true);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        manager.scanForNetworks(new RecordingScanListener(), 0);
+        backend.loop.advanceBy(FLOW_MILLIS);
+        RecordingScanListener scanListener = new RecordingScanListener();
+
+        manager.scanForNetworks(scanListener, 30 * 1000);
+        assertNull(scanListener.scanResults);
+        backend.loop.runDueTasks();
+
+        assertEquals(1, scanListener.scanResults.size());
+        assertEquals(1, backend.getScansStarted());
+    }
+
+    @Test
+    public void startsScansOffTheCallingThread() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, true);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        RecordingScanListener scanListener = new RecordingScanListener();
+
+        manager.scanForNetworks(scanListener, 0);
+        assertEquals(0, backend.getScansStarted());
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        assertEquals(1, backend.getScansStarted());
+        assertEquals(1, scanListener.scanResults.size());
+    }
+
+    @Test
+    public void failsTheFastReconnectWhenAWifiCommandThrows() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, true).withDeadSystemService();
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        manager.setFastReconnectEnabled(true);
+
+        manager.connectToAvailableSSID("office", listener);
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        assertEquals("WiFi command failed in state WAITING_FOR_WIFI: " + SERVICE_DIED, listener.error);
+        assertEquals(ConnectionState.FAILED, manager.getConnectionState());
+    }
+
+    @Test
+    public void failsTheCachedScanLookupWhenAWifiCommandThrows() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, true).withDeadSystemService();
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+
+        manager.connectToAvailableSSID(Collections.singletonList("office"), 30 * 1000, listener);
+        backend.loop.advanceBy(FLOW_MILLIS);
+
+        assertEquals("WiFi command failed in state SCANNING: " + SERVICE_DIED, listener.error);
+        assertEquals(0, backend.getScansStarted());
+    }
+
+    @Test
+    public void reportsEveryNetworkAsFailedWhenProvisioningThrows() {
+        backend.withWifiEnabled().withDeadSystemService();
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        final ProvisioningResult[] provisioned = new ProvisioningResult[1];
+
+        manager.provisionNetworks(Arrays.asList(new WifiConfiguration(), new WifiConfiguration()),
+                new ProvisioningListener() {
+                    @Override
+                    public void onNetworksProvisioned(ProvisioningResult result) {
+                        provisioned[0] = result;
+                    }
+                });
+        backend.loop.runDueTasks();
+
+        assertEquals(2, provisioned[0].getFailed());
+        assertEquals(0, provisioned[0].getAdded());
+    }
+
+    @Test
+    public void shutdownUnregistersEverythingAndWritesTheHistory() {
+        backend.withWifiEnabled().withAccessPoint("office", -50, true);
+        WifiConnectionManager manager = new WifiConnectionManager(backend);
+        File historyFile = new File(filesDir.getRoot(), NetworkHistoryStore.FILE_NAME);
+        manager.connectToAvailableSSID("office", listener);
+        for (long elapsed = 0; elapsed < FLOW_MILLIS && !listener.established; elapsed += 100) {
+            backend.loop.advanceBy(100);
+        }
+        assertTrue(listener.established);
+        WifiCommandExecutor commandExecutor = WifiCommandExecutor.forBackend(backend);
+        assertFalse(historyFile.exists());
+
+        WifiConnectionManager.shutdown(backend);
+        backend.loop.runDueTasks();
+
+        assertEquals(0, backend.getEventListenerCount());
+        assertEquals(0, backend.getNetworkListenerCount());
+        assertTrue(historyFile.exists());
+        assertNotSame(commandExecutor, WifiCommandExecutor.forBackend(backend));
+    }
+
+    private static class RecordingScanListener implements ScanResultsListener {
+        private List<ScanResult> scanResults;
+
+        @Override
+        public void onScanResultsAvailable(List<ScanResult> scanResults) {
+            this.scanResults = scanResults;
+        }
+    }
+
+    private static class RecordingListener implements ConnectionStateChangedListener {
+        private boolean established;
+        private String error;
+
+        @Override
+        public void onConnectionEstablished() {
+            established = true;
+        }
+
+        @Override
+        public void onConnectionError(String reason) {
+            error = reason;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.intentfilter.wificonnect;
+
+import com.intentfilter.wificonnect.WifiOperation.Callback;
+import com.intentfilter.wificonnect.WifiOperation.Continuation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WifiOperationTest {
+    private SimulatedLoop loop;
+    private WifiOperation<String> operation;
+    private int releases;
+
+    @Before
+    public void setUp() {
+        loop = new SimulatedLoop();
+        operation = new WifiOperation<>(loop.newScheduler());
+        operation.setReleaseAction(new Runnable() {
+            @Override
+            public void run() {
+                releases++;
+            }
+        });
+    }
+
+    @Test
+    public void completesOnceAndNotifiesCallbacksAddedBeforeAndAfter() throws Exception {
+        RecordingCallback<String> before = new RecordingCallback<>();
+        RecordingCallback<String> after = new RecordingCallback<>();
+        operation.addCallback(before);
+
+        assertTrue(operation.succeed("office"));
+        assertFalse(operation.fail(new IllegalStateException()));
+        assertFalse(operation.cancel(true));
+        operation.addCallback(after);
+
+        assertEquals("office", operation.get());
+        assertEquals("[office]", before.events.toString());
+        assertEquals("[office]", after.events.toString());
+        assertEquals(0, releases);
+    }
+
+    @Test
+    public void cancellingReleasesTheOperation() throws Exception {
+        RecordingCallback<String> callback = new RecordingCallback<>();
+        operation.addCallback(callback);
+
+        assertTrue(operation.cancel(false));
+
+        assertTrue(operation.isCancelled());
+        assertTrue(callback.events.get(0) instanceof CancellationException);
+        assertEquals(1, releases);
+        try {
+            operation.get();
+            fail();
+        } catch (CancellationException expected) {
+        }
+    }
+
+    @Test
+    public void timesOutAndReleasesUnlessCompletedInTime() throws Exception {
+        operation.withTimeout(1000);
+
+        loop.advanceBy(999);
+        assertFalse(operation.isDone());
+        loop.advanceBy(1);
+
+        assertEquals(1, releases);
+        try {
+            operation.get();
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void completingBeforeTheTimeoutRemovesIt() throws Exception {
+        operation.withTimeout(1000);
+
+        loop.advanceBy(500);
+        operation.succeed("office");
+        loop.advanceBy(1000);
+
+        assertEquals("office", operation.get());
+        assertEquals(0, releases);
+    }
+
+    @Test
+    public void thenStartsTheNextStageWithTheResult() throws Exception {
+        final List<String> applied = new ArrayList<>();
+        final WifiOperation<Integer> nextStage = new WifiOperation<>(loop.newScheduler());
+        WifiOperation<Integer> chained = operation.then(new Continuation<String, Integer>() {
+            @Override
+            public WifiOperation<Integer> apply(String result) {
+                applied.add(result);
+                return nextStage;
+            }
+        });
+
+        operation.succeed("office");
+        assertFalse(chained.isDone());
+        nextStage.succeed(42);
+
+        assertEquals("[office]", applied.toString());
+        assertEquals(42, (int) chained.get());
+    }
+
+    @Test
+    public void cancellingTheChainCancelsTheRunningStage() {
+        final WifiOperation<Integer> nextStage = new WifiOperation<>(loop.newScheduler());
+        WifiOperation<Integer> chained = operation.then(new Continuation<String, Integer>() {
+            @Override
+            public WifiOperation<Integer> apply(String result) {
+                return nextStage;
+            }
+        });
+        operation.succeed("office");
+
+        chained.cancel(true);
+
+        assertTrue(nextStage.isCancelled());
+        assertEquals(0, releases);
+    }
+
+    @Test
+    public void failureSkipsTheContinuation() throws Exception {
+        final List<String> applied = new ArrayList<>();
+        WifiOperation<Integer> chained = operation.then(new Continuation<String, Integer>() {
+            @Override
+            public WifiOperation<Integer> apply(String result) {
+                applied.add(result);
+                return new WifiOperation<>(loop.newScheduler());
+            }
+        });
+
+        operation.fail(new IllegalStateException("No scan results"));
+
+        assertTrue(applied.isEmpty());
+        try {
+            chained.get();
+            fail();
+        } catch (ExecutionException expected) {
+            assertEquals("No scan results", expected.getCause().getMessage());
+        }
+    }
+
+    private static class RecordingCallback<T> implements Callback<T> {
+        private final List<Object> events = new ArrayList<>();
+
+        @Override
+        public void onSuccess(T result) {
+            events.add(result);
+        }
+
+        @Override
+        public void onFailure(Throwable failure) {
+            events.add(failure);
+        }
+    }
+}